@@ -0,0 +1,132 @@
+package ml;
+
+/**
+ * The results of running a classifier over the folds of a cross validation
+ * (see CrossValidator): the accuracy and the train and test times of each fold.
+ */
+public class CrossValidationResult {
+    private Fold[] folds;
+    
+    /**
+     * @param folds the results for each fold, in fold order
+     */
+    public CrossValidationResult(Fold[] folds) {
+        this.folds = folds;
+    }
+    
+    /**
+     * @return the number of folds
+     */
+    public int getNumFolds() {
+        return folds.length;
+    }
+    
+    /**
+     * @param fold the fold number, starting at 0
+     * @return the results for that fold
+     */
+    public Fold getFold(int fold) {
+        return folds[fold];
+    }
+    
+    /**
+     * Get the accuracy over all of the folds, i.e. the total number of test examples
+     * classified correctly divided by the total number of test examples
+     * 
+     * @return the accuracy
+     */
+    public double getAccuracy() {
+        double totalCorrect = 0;
+        double totalExamples = 0;
+        
+        for (Fold fold : folds) {
+            totalCorrect += fold.getCorrect();
+            totalExamples += fold.getTotal();
+        }
+        
+        return totalExamples == 0 ? 0.0 : totalCorrect / totalExamples;
+    }
+    
+    /**
+     * @return the total time spent training over all of the folds, in milliseconds
+     */
+    public double getTotalTrainTime() {
+        double total = 0;
+        
+        for (Fold fold : folds) {
+            total += fold.getTrainTime();
+        }
+        
+        return total;
+    }
+    
+    /**
+     * @return the total time spent classifying over all of the folds, in milliseconds
+     */
+    public double getTotalTestTime() {
+        double total = 0;
+        
+        for (Fold fold : folds) {
+            total += fold.getTestTime();
+        }
+        
+        return total;
+    }
+    
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        
+        for (int i = 0; i < folds.length; i++) {
+            buffer.append(String.format("Fold %d: %.4f (%d/%d)\ttrain: %.1fms\ttest: %.1fms\n", i,
+                    folds[i].getAccuracy(), folds[i].getCorrect(), folds[i].getTotal(),
+                    folds[i].getTrainTime(), folds[i].getTestTime()));
+        }
+        
+        buffer.append(String.format("Total: %.4f\ttrain: %.1fms\ttest: %.1fms", getAccuracy(),
+                getTotalTrainTime(), getTotalTestTime()));
+        return buffer.toString();
+    }
+    
+    /**
+     * The results for a single fold
+     */
+    public static class Fold {
+        private int correct;
+        private int total;
+        private double trainTime;
+        private double testTime;
+        
+        /**
+         * @param correct the number of test examples classified correctly
+         * @param total the number of test examples
+         * @param trainTime the time spent training, in milliseconds
+         * @param testTime the time spent classifying the test examples, in milliseconds
+         */
+        public Fold(int correct, int total, double trainTime, double testTime) {
+            this.correct = correct;
+            this.total = total;
+            this.trainTime = trainTime;
+            this.testTime = testTime;
+        }
+        
+        public int getCorrect() {
+            return correct;
+        }
+        
+        public int getTotal() {
+            return total;
+        }
+        
+        public double getAccuracy() {
+            return total == 0 ? 0.0 : ((double) correct) / total;
+        }
+        
+        public double getTrainTime() {
+            return trainTime;
+        }
+        
+        public double getTestTime() {
+            return testTime;
+        }
+    }
+}
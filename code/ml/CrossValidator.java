@@ -0,0 +1,270 @@
+package ml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import ml.classifiers.Classifier;
+import ml.classifiers.KNNClassifier;
+import ml.classifiers.SeedableClassifier;
+import ml.data.CrossValidationSet;
+import ml.data.DataSet;
+import ml.data.DataSetSplit;
+import ml.data.Example;
+
+/**
+ * Runs cross validation with the folds trained and tested concurrently.  Each fold
+ * gets its own classifier from a supplier (e.g. factory::getClassifier for a
+ * ClassifierFactory, or one that configures the classifier), so they don't share
+ * any state, and the folds are views onto the same data set (see CrossValidationSet)
+ * so running them at the same time doesn't copy the data.
+ * 
+ * The results are collected in fold order, so they're the same however the folds
+ * are scheduled.  Classifiers that make random choices are seeded from the run's seed
+ * and the fold number if they're SeedableClassifiers (the perceptrons, logistic
+ * regression, k-NN with LSH, and OVA and AVA, which pass it on to their binary
+ * classifiers), so with a seeded CrossValidationSet and one of the seeded run methods
+ * the results are deterministic.  Classifiers that aren't seedable are only as
+ * repeatable as they are.
+ */
+public class CrossValidator {
+    private ExecutorService pool;
+    
+    /**
+     * Create a cross validator that runs the folds on a fork-join pool
+     * with one thread per processor
+     */
+    public CrossValidator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Create a cross validator that runs the folds on a fork-join pool
+     * 
+     * @param numThreads the number of folds to run at the same time
+     */
+    public CrossValidator(int numThreads) {
+        this(new ForkJoinPool(numThreads));
+    }
+    
+    /**
+     * Create a cross validator that runs the folds on pool, e.g. a
+     * thread per task executor if the classifiers spend their time on I/O
+     * 
+     * @param pool the executor to run the folds on
+     */
+    public CrossValidator(ExecutorService pool) {
+        this.pool = pool;
+    }
+    
+    /**
+     * Run numFolds-fold cross validation on dataset, randomizing the data with seed
+     * 
+     * @param supplier makes a new classifier for each fold
+     * @param dataset
+     * @param numFolds
+     * @param seed the random seed used to split the data and seed the classifiers
+     * @return the results
+     */
+    public CrossValidationResult run(Supplier<? extends Classifier> supplier, DataSet dataset, int numFolds, long seed) {
+        return run(supplier, dataset.getRandomCrossValidationSet(numFolds, seed), seed);
+    }
+    
+    /**
+     * Run cross validation over all of the splits of cvSet
+     * 
+     * @param supplier makes a new classifier for each fold
+     * @param cvSet
+     * @return the results
+     */
+    public CrossValidationResult run(Supplier<? extends Classifier> supplier, CrossValidationSet cvSet) {
+        return run(supplier, cvSet, new Random().nextLong());
+    }
+    
+    /**
+     * Run cross validation over all of the splits of cvSet
+     * 
+     * @param supplier makes a new classifier for each fold
+     * @param cvSet
+     * @param seed the random seed the classifiers are seeded from
+     * @return the results
+     */
+    public CrossValidationResult run(Supplier<? extends Classifier> supplier, CrossValidationSet cvSet, long seed) {
+        List<DataSetSplit> splits = new ArrayList<DataSetSplit>();
+        
+        for (int fold = 0; fold < cvSet.getNumSplits(); fold++) {
+            splits.add(cvSet.getValidationSet(fold));
+        }
+        
+        return run(supplier, splits, seed);
+    }
+    
+    /**
+     * Train a classifier on the training data of each split and test it on the
+     * test data, running the splits concurrently
+     * 
+     * @param supplier makes a new classifier for each split
+     * @param splits
+     * @return the results, with a fold for each split in the same order
+     */
+    public CrossValidationResult run(Supplier<? extends Classifier> supplier, List<DataSetSplit> splits) {
+        return run(supplier, splits, new Random().nextLong());
+    }
+    
+    /**
+     * Train a classifier on the training data of each split and test it on the
+     * test data, running the splits concurrently
+     * 
+     * @param supplier makes a new classifier for each split
+     * @param splits
+     * @param seed the random seed the classifiers are seeded from
+     * @return the results, with a fold for each split in the same order
+     */
+    public CrossValidationResult run(final Supplier<? extends Classifier> supplier, List<DataSetSplit> splits, final long seed) {
+        List<Callable<CrossValidationResult.Fold>> tasks = new ArrayList<Callable<CrossValidationResult.Fold>>();
+        
+        for (int i = 0; i < splits.size(); i++) {
+            final DataSetSplit split = splits.get(i);
+            final int fold = i;
+            
+            tasks.add(new Callable<CrossValidationResult.Fold>() {
+                public CrossValidationResult.Fold call() {
+                    Classifier classifier = supplier.get();
+                    
+                    // seeded by fold rather than by whichever thread gets to it first
+                    if (classifier instanceof SeedableClassifier) {
+                        ((SeedableClassifier) classifier).setSeed(getFoldSeed(seed, fold));
+                    }
+                    
+                    return runFold(classifier, split);
+                }
+            });
+        }
+        
+        CrossValidationResult.Fold[] folds = new CrossValidationResult.Fold[splits.size()];
+        
+        try {
+            List<Future<CrossValidationResult.Fold>> results = pool.invokeAll(tasks);
+            
+            for (int i = 0; i < folds.length; i++) {
+                folds[i] = results.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        
+        return new CrossValidationResult(folds);
+    }
+    
+    /**
+     * Run cross validation of k-NN (with the default, euclidean, distance) for every k from
+     * 1 to maxK at once.  Rather than training and testing on each fold for each k, the
+     * maxK nearest neighbors of every example among the examples outside of its test split
+     * are found in one (parallel) pass over the data, which are exactly its neighbors in
+     * its split for any k, and every fold and k is answered from those lists.
+     * 
+     * The folds have no training time and the time to find the neighbors is split evenly
+     * between them (for each k, since all of the k share it).
+     * 
+     * @param cvSet
+     * @param maxK the largest k to test
+     * @return the results for each k, with the results for k at position k-1
+     */
+    public CrossValidationResult[] runKNN(CrossValidationSet cvSet, int maxK) {
+        DataSet data = cvSet.getAllData();
+        List<Example> examples = data.getData();
+        int numFolds = cvSet.getNumSplits();
+        int[] splits = new int[examples.size()];
+        
+        for (int i = 0; i < splits.length; i++) {
+            splits[i] = cvSet.getSplit(i);
+        }
+        
+        long start = System.nanoTime();
+        KNNClassifier knn = new KNNClassifier();
+        knn.train(data);
+        int[][] neighbors = knn.getNeighborLists(splits, maxK);
+        double searchTime = (System.nanoTime() - start) / 1e6;
+        
+        CrossValidationResult[] results = new CrossValidationResult[maxK];
+        
+        for (int k = 1; k <= maxK; k++) {
+            CrossValidationResult.Fold[] folds = new CrossValidationResult.Fold[numFolds];
+            
+            for (int fold = 0; fold < numFolds; fold++) {
+                start = System.nanoTime();
+                int correct = 0;
+                
+                for (int i = cvSet.getSplitBegin(fold); i < cvSet.getSplitEnd(fold); i++) {
+                    double prediction = knn.getMajorityLabel(neighbors[i], k);
+                    if (Math.abs(prediction - examples.get(i).getLabel()) < 0.001) {
+                        correct++;
+                    }
+                }
+                
+                double testTime = searchTime / numFolds + (System.nanoTime() - start) / 1e6;
+                folds[fold] = new CrossValidationResult.Fold(correct, cvSet.getSplitEnd(fold) - cvSet.getSplitBegin(fold),
+                        0.0, testTime);
+            }
+            
+            results[k - 1] = new CrossValidationResult(folds);
+        }
+        
+        return results;
+    }
+    
+    /**
+     * @return the seed for the classifier of fold in a run with seed, different for each fold
+     */
+    private static long getFoldSeed(long seed, int fold) {
+        return seed + fold * 0x9E3779B97F4A7C15L;
+    }
+    
+    /**
+     * Train classifier on the training data of split and test it on the test data
+     * 
+     * @param classifier
+     * @param split
+     * @return the results for the fold
+     */
+    private static CrossValidationResult.Fold runFold(Classifier classifier, DataSetSplit split) {
+        long start = System.nanoTime();
+        classifier.train(split.getTrain());
+        long trainTime = System.nanoTime() - start;
+        
+        start = System.nanoTime();
+        int correct = 0;
+        List<Example> test = split.getTest().getData();
+        
+        // KNN classifies the whole test set faster in one go, on this thread
+        // since the folds already run concurrently
+        double[] predictions = classifier instanceof KNNClassifier ?
+                ((KNNClassifier) classifier).classifyAll(split.getTest(), 1) : null;
+        
+        for (int i = 0; i < test.size(); i++) {
+            Example example = test.get(i);
+            double prediction = predictions != null ? predictions[i] : classifier.classify(example);
+            if (Math.abs(prediction - example.getLabel()) < 0.001) {
+                correct++;
+            }
+        }
+        
+        long testTime = System.nanoTime() - start;
+        return new CrossValidationResult.Fold(correct, test.size(), trainTime / 1e6, testTime / 1e6);
+    }
+    
+    /**
+     * Shut down the pool the folds are run on
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
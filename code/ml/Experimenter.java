@@ -1,5 +1,20 @@
 package ml;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
 import ml.classifiers.*;
 import ml.data.*;
 
@@ -10,6 +25,34 @@ import ml.data.*;
  * Assignment 5
  */
 public class Experimenter {
+    // the folds of each cross validation are run concurrently
+    private CrossValidator crossValidator = new CrossValidator();
+    
+    // seed for the random train/test splits, set it to make the experiments repeatable
+    private long seed = System.nanoTime();
+    
+    // parsed data sets, so running several experiments on the same file only parses it once
+    private DataSetCache dataSets = new DataSetCache();
+    
+    /**
+     * Set the random seed used to split the data
+     * 
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+    
+    /**
+     * Set the cache the data sets are loaded through, e.g. one that also
+     * keeps them on disk so they aren't parsed again by the next run
+     * 
+     * @param dataSets
+     */
+    public void setDataSetCache(DataSetCache dataSets) {
+        this.dataSets = dataSets;
+    }
+    
     /**
      * Performs 10-fold cross validation on wine dataset comparing OVA, AVA, and multiclass decision trees.
      * 
@@ -20,7 +63,7 @@ public class Experimenter {
         System.out.println("Dataset: " + dataPath);
         System.out.println();
 
-        DataSet dataset = new DataSet(dataPath, DataSet.TEXTFILE);
+        DataSet dataset = dataSets.load(dataPath, DataSet.TEXTFILE);
         System.out.println("Loaded dataset with " + dataset.getData().size() + " examples");
         System.out.println("Number of classes: " + dataset.getLabels().size());
         System.out.println("Features: " + dataset.getAllFeatureIndices().size());
@@ -65,100 +108,37 @@ public class Experimenter {
     /**
      * Test OVA classifier with specified depth
      */
-    private double testOVA(CrossValidationSet cvSet, int depth) {
-        double totalCorrect = 0;
-        double totalExamples = 0;
-        
-        for (int fold = 0; fold < cvSet.getNumSplits(); fold++) {
-            DataSetSplit split = cvSet.getValidationSet(fold);
-            DataSet trainData = split.getTrain();
-            DataSet testData = split.getTest();
-            
-            // Create and train OVA classifier
-            ClassifierFactory factory = new ClassifierFactory(ClassifierFactory.DECISION_TREE, depth);
-            OVAClassifier classifier = new OVAClassifier(factory);
-            classifier.train(trainData);
-            
-            // Test on this fold
-            int correct = 0;
-            for (Example example : testData.getData()) {
-                double prediction = classifier.classify(example);
-                if (Math.abs(prediction - example.getLabel()) < 0.001) {
-                    correct++;
-                }
+    private double testOVA(CrossValidationSet cvSet, final int depth) {
+        // Create a new OVA classifier for each fold
+        Supplier<Classifier> supplier = new Supplier<Classifier>() {
+            public Classifier get() {
+                return new OVAClassifier(new ClassifierFactory(ClassifierFactory.DECISION_TREE, depth));
             }
-            
-            totalCorrect += correct;
-            totalExamples += testData.getData().size();
-        }
+        };
         
-        return totalCorrect / totalExamples;
+        return crossValidator.run(supplier, cvSet, seed).getAccuracy();
     }
     
     /**
      * Test AVA classifier with specified depth
      */
-    private double testAVA(CrossValidationSet cvSet, int depth) {
-        double totalCorrect = 0;
-        double totalExamples = 0;
-        
-        for (int fold = 0; fold < cvSet.getNumSplits(); fold++) {
-            DataSetSplit split = cvSet.getValidationSet(fold);
-            DataSet trainData = split.getTrain();
-            DataSet testData = split.getTest();
-            
-            // Create and train AVA classifier
-            ClassifierFactory factory = new ClassifierFactory(ClassifierFactory.DECISION_TREE, depth);
-            AVAClassifier classifier = new AVAClassifier(factory);
-            classifier.train(trainData);
-            
-            // Test on this fold
-            int correct = 0;
-            for (Example example : testData.getData()) {
-                double prediction = classifier.classify(example);
-                if (Math.abs(prediction - example.getLabel()) < 0.001) {
-                    correct++;
-                }
+    private double testAVA(CrossValidationSet cvSet, final int depth) {
+        // Create a new AVA classifier for each fold
+        Supplier<Classifier> supplier = new Supplier<Classifier>() {
+            public Classifier get() {
+                return new AVAClassifier(new ClassifierFactory(ClassifierFactory.DECISION_TREE, depth));
             }
-            
-            totalCorrect += correct;
-            totalExamples += testData.getData().size();
-        }
+        };
         
-        return totalCorrect / totalExamples;
+        return crossValidator.run(supplier, cvSet, seed).getAccuracy();
     }
     
     /**
      * Test multiclass decision tree with specified depth
      */
     private double testMulticlassDT(CrossValidationSet cvSet, int depth) {
-        double totalCorrect = 0;
-        double totalExamples = 0;
-        
-        for (int fold = 0; fold < cvSet.getNumSplits(); fold++) {
-            DataSetSplit split = cvSet.getValidationSet(fold);
-            DataSet trainData = split.getTrain();
-            DataSet testData = split.getTest();
-            
-            // Create and train multiclass decision tree
-            DecisionTreeClassifier classifier = new DecisionTreeClassifier();
-            classifier.setDepthLimit(depth);
-            classifier.train(trainData);
-            
-            // Test on this fold
-            int correct = 0;
-            for (Example example : testData.getData()) {
-                double prediction = classifier.classify(example);
-                if (Math.abs(prediction - example.getLabel()) < 0.001) {
-                    correct++;
-                }
-            }
-            
-            totalCorrect += correct;
-            totalExamples += testData.getData().size();
-        }
-        
-        return totalCorrect / totalExamples;
+        ClassifierFactory factory = new ClassifierFactory(ClassifierFactory.DECISION_TREE, depth);
+        return crossValidator.run(factory::getClassifier, cvSet, seed).getAccuracy();
     }
     
     /**
@@ -206,7 +186,7 @@ public class Experimenter {
      * @param dataPath path to the wine dataset
      */
     public void assessLRPerformance(String dataPath) {
-        DataSet dataset = new DataSet(dataPath, DataSet.TEXTFILE);
+        DataSet dataset = dataSets.load(dataPath, DataSet.TEXTFILE);
 
         //CrossValidationSet cvSet = dataset.getCrossValidationSet(10);
         //double[] learningRates = {0.001, 0.005, 0.01, 0.05, 0.1};
@@ -292,7 +272,7 @@ public class Experimenter {
      * @param dataPath path to the wine dataset
      */
     public void compareNaiveBayesAndLR(String dataPath) {
-        DataSet dataset = new DataSet(dataPath, DataSet.TEXTFILE);
+        DataSet dataset = dataSets.load(dataPath, DataSet.TEXTFILE);
         CrossValidationSet cvSet = dataset.getCrossValidationSet(10);
         
         double bestNBAccuracy = 0.656;
@@ -341,32 +321,23 @@ public class Experimenter {
     /**
      * Test MultiLRclassifier with specified iterations and learning rate
      */
-    private double testLR(DataSet dataset, int iterations, double learningRate) {
-        double totalCorrect = 0;
-        double totalExamples = 0;
-        
+    private double testLR(DataSet dataset, final int iterations, final double learningRate) {
+        // 10 random 80/20 splits
+        List<DataSetSplit> splits = new ArrayList<DataSetSplit>();
         for (int fold = 0; fold < 10; fold++) {
-            DataSetSplit split = dataset.split(0.8);
-            DataSet trainData = split.getTrain();
-            DataSet testData = split.getTest();
-            
-            MultiLRClassifier classifier = new MultiLRClassifier();
-            classifier.setIterations(iterations);
-            classifier.setLearningRate(learningRate);
-            classifier.train(trainData);
-            
-            int correct = 0;
-            for (Example example : testData.getData()) {
-                double prediction = classifier.classify(example);
-                if (Math.abs(prediction - example.getLabel()) < 0.001) {
-                    correct++;
-                }
-            }
-            
-            totalCorrect += correct;
-            totalExamples += testData.getData().size();
+            splits.add(dataset.split(0.8, seed + fold));
         }
-        return totalCorrect / totalExamples;
+        
+        Supplier<Classifier> supplier = new Supplier<Classifier>() {
+            public Classifier get() {
+                MultiLRClassifier classifier = new MultiLRClassifier();
+                classifier.setIterations(iterations);
+                classifier.setLearningRate(learningRate);
+                return classifier;
+            }
+        };
+        
+        return crossValidator.run(supplier, splits, seed).getAccuracy();
     }
     
     /**
@@ -405,6 +376,339 @@ public class Experimenter {
         return totalCorrect / totalExamples;
     }
     
+    /**
+     * Compare the throughput of the String based CSVDataReader with the byte level
+     * CSVByteReader on a generated CSV file with numRows rows of random numbers.
+     * Both readers are run over the same file and checked to produce the same values.
+     * 
+     * @param numRows the number of rows to generate (e.g. a few million)
+     * @param numFeatures the number of feature columns (plus one label column)
+     */
+    public void compareCSVReaders(int numRows, int numFeatures) {
+        System.out.println("=== CSV Reader Throughput ===");
+        
+        try {
+            File file = File.createTempFile("csvbench", ".csv");
+            file.deleteOnExit();
+            
+            // generate the data: a mix of integers, decimals and exponents
+            Random rand = new Random(0);
+            BufferedWriter out = new BufferedWriter(new FileWriter(file));
+            
+            for (int f = 0; f < numFeatures; f++) {
+                out.write("f" + f + ",");
+            }
+            out.write("label\n");
+            
+            for (int row = 0; row < numRows; row++) {
+                for (int f = 0; f < numFeatures; f++) {
+                    switch (f % 3) {
+                        case 0: out.write(Integer.toString(rand.nextInt(100))); break;
+                        case 1: out.write(String.format(Locale.US, "%.6f", rand.nextGaussian())); break;
+                        default: out.write(String.format(Locale.US, "%.4f", rand.nextDouble() * 1000)); break;
+                    }
+                    out.write(",");
+                }
+                out.write(rand.nextBoolean() ? "1\n" : "-1\n");
+            }
+            out.close();
+            
+            double megabytes = file.length() / (1024.0 * 1024.0);
+            System.out.printf("Generated %d rows x %d columns (%.1f MB)\n", numRows, numFeatures + 1, megabytes);
+            
+            // String based reader
+            long start = System.nanoTime();
+            BufferedReader in = new BufferedReader(new FileReader(file));
+            in.readLine(); // header
+            double stringSum = sumValues(new CSVDataReader(in, numFeatures));
+            double stringSeconds = (System.nanoTime() - start) / 1e9;
+            in.close();
+            
+            // byte level reader
+            start = System.nanoTime();
+            double byteSum = sumValues(new CSVByteReader(file.getPath()));
+            double byteSeconds = (System.nanoTime() - start) / 1e9;
+            
+            System.out.printf("CSVDataReader: %.2fs (%.0f rows/s, %.1f MB/s)\n", stringSeconds, numRows / stringSeconds, megabytes / stringSeconds);
+            System.out.printf("CSVByteReader: %.2fs (%.0f rows/s, %.1f MB/s)\n", byteSeconds, numRows / byteSeconds, megabytes / byteSeconds);
+            System.out.printf("Speedup: %.2fx, same values: %b\n", stringSeconds / byteSeconds, stringSum == byteSum);
+            System.out.println();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Read all of the examples from reader
+     * 
+     * @return the sum of all of the labels and feature values
+     */
+    private double sumValues(Iterator<Example> reader) {
+        double sum = 0;
+        
+        while (reader.hasNext()) {
+            Example e = reader.next();
+            sum += e.getLabel();
+            
+            for (int i = 0; i < e.getNumNonZero(); i++) {
+                sum += e.getValueAt(i);
+            }
+        }
+        
+        return sum;
+    }
+    
+    /**
+     * Compare storing the features and the MultiLR weights as doubles with storing them
+     * as floats: the accuracy, the training and classification throughput, and the memory
+     * used, over 10-fold cross validation.  The folds are run one at a time so the
+     * timings aren't affected by other folds.
+     * 
+     * @param dataPath path to the wine dataset
+     * @param iterations the number of MultiLR training iterations
+     */
+    public void compareFloatStorage(String dataPath, final int iterations) {
+        System.out.println("=== Float vs. Double Storage (MultiLR, 10-fold CV) ===");
+        
+        DataSet dataset = dataSets.load(dataPath, DataSet.TEXTFILE);
+        CrossValidator serial = new CrossValidator(1);
+        
+        long numValues = 0;
+        for (Example example : dataset.getData()) {
+            numValues += example.getNumNonZero();
+        }
+        long numWeights = (long) dataset.getLabels().size() * dataset.getNumFeatures();
+        
+        CrossValidationResult[] results = new CrossValidationResult[2];
+        
+        for (int run = 0; run < 2; run++) {
+            final boolean useFloat = run == 1;
+            dataset.setFloat(useFloat);
+            
+            Supplier<Classifier> supplier = new Supplier<Classifier>() {
+                public Classifier get() {
+                    MultiLRClassifier classifier = new MultiLRClassifier();
+                    classifier.setIterations(iterations);
+                    classifier.setFloatWeights(useFloat);
+                    return classifier;
+                }
+            };
+            
+            // once to warm up the JIT, then the timed run
+            serial.run(supplier, dataset.getCrossValidationSet(10), seed);
+            results[run] = serial.run(supplier, dataset.getCrossValidationSet(10), seed);
+            
+            // each fold trains on 9/10 of the data and tests on 1/10
+            double trained = 9.0 * dataset.getData().size() * iterations;
+            double tested = dataset.getData().size();
+            int bytesPerValue = useFloat ? 4 : 8;
+            
+            System.out.printf("%-7s accuracy: %.4f  train: %.0f examples/s  classify: %.0f examples/s  "
+                    + "feature values: %.1f MB  weights: %.1f MB\n",
+                    useFloat ? "float" : "double", results[run].getAccuracy(),
+                    trained / (results[run].getTotalTrainTime() / 1000),
+                    tested / (results[run].getTotalTestTime() / 1000),
+                    numValues * (4.0 + bytesPerValue) / (1024 * 1024),
+                    numWeights * (double) bytesPerValue / (1024 * 1024));
+        }
+        
+        dataset.setFloat(false);
+        serial.shutdown();
+        
+        System.out.printf("Accuracy delta (float - double): %+.4f\n", results[1].getAccuracy() - results[0].getAccuracy());
+        System.out.printf("Training speedup: %.2fx  Classification speedup: %.2fx\n",
+                results[0].getTotalTrainTime() / results[1].getTotalTrainTime(),
+                results[0].getTotalTestTime() / results[1].getTotalTestTime());
+    }
+    
+    /**
+     * Pick k for KNN with 10-fold cross validation, testing every k from 1 to maxK
+     * from one pass over the data (see CrossValidator.runKNN)
+     * 
+     * @param dataPath path to the wine dataset
+     * @param maxK the largest k to test
+     * @return the k with the best accuracy
+     */
+    public int tuneKNN(String dataPath, int maxK) {
+        System.out.println("=== KNN Cross Validation (k=1.." + maxK + ") ===");
+        
+        DataSet dataset = dataSets.load(dataPath, DataSet.TEXTFILE);
+        long start = System.nanoTime();
+        CrossValidationResult[] results = crossValidator.runKNN(dataset.getRandomCrossValidationSet(10, seed), maxK);
+        int bestK = 1;
+        
+        for (int k = 1; k <= maxK; k++) {
+            System.out.printf("k=%d: %.4f\n", k, results[k - 1].getAccuracy());
+            
+            if (results[k - 1].getAccuracy() > results[bestK - 1].getAccuracy()) {
+                bestK = k;
+            }
+        }
+        
+        System.out.printf("Best k: %d (%.4f)  Time: %.1fms\n", bestK, results[bestK - 1].getAccuracy(),
+                (System.nanoTime() - start) / 1e6);
+        return bestK;
+    }
+    
+    /**
+     * Measure how long KNN takes to classify a single example, and how much memory it
+     * allocates doing so, on an 80/20 split of the data.  The test examples are classified
+     * once to warm up the JIT and then timed one at a time.
+     * 
+     * @param dataPath path to the wine dataset
+     * @param k the number of neighbors
+     */
+    public void measureKNNLatency(String dataPath, int k) {
+        System.out.println("=== KNN Classification Latency (k=" + k + ") ===");
+        
+        DataSet dataset = dataSets.load(dataPath, DataSet.TEXTFILE);
+        DataSetSplit split = dataset.split(0.8, seed);
+        List<Example> test = split.getTest().getData();
+        
+        KNNClassifier knn = new KNNClassifier();
+        knn.setK(k);
+        knn.train(split.getTrain());
+        
+        for (Example example : test) {
+            knn.classify(example);
+        }
+        
+        long[] latencies = new long[test.size()];
+        long allocatedBefore = getAllocatedBytes();
+        
+        for (int i = 0; i < latencies.length; i++) {
+            long start = System.nanoTime();
+            knn.classify(test.get(i));
+            latencies[i] = System.nanoTime() - start;
+        }
+        
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        Arrays.sort(latencies);
+        
+        System.out.printf("Training examples: %d  Queries: %d\n", split.getTrain().getData().size(), latencies.length);
+        System.out.printf("Latency per query: p50 %.1f us  p99 %.1f us  max %.1f us\n",
+                latencies[latencies.length / 2] / 1e3,
+                latencies[(int) (latencies.length * 0.99)] / 1e3,
+                latencies[latencies.length - 1] / 1e3);
+        
+        if (allocatedBefore >= 0) {
+            System.out.printf("Allocated per query: %.1f bytes\n", (double) allocated / latencies.length);
+        }
+    }
+    
+    /**
+     * Measure how many of the true k nearest neighbors the approximate (LSH) KNN search
+     * finds, and how much faster it is, for a range of LSH parameters (with and without
+     * re-ranking the candidates by their exact distance) on an 80/20 split of
+     * the data.  The euclidean search is compared to the exact BRUTE_FORCE search and the
+     * cosine one to the exact INVERTED_INDEX search.
+     * 
+     * @param dataPath path to the wine dataset
+     * @param k the number of neighbors
+     */
+    public void measureKNNRecall(String dataPath, int k) {
+        System.out.println("=== Approximate KNN Recall (k=" + k + ") ===");
+        
+        DataSet dataset = dataSets.load(dataPath, DataSet.TEXTFILE);
+        DataSetSplit split = dataset.split(0.8, seed);
+        List<Example> test = split.getTest().getData();
+        
+        int[] lshMethods = {KNNClassifier.LSH_EUCLIDEAN, KNNClassifier.LSH_COSINE};
+        int[] exactMethods = {KNNClassifier.BRUTE_FORCE, KNNClassifier.INVERTED_INDEX};
+        String[] names = {"euclidean", "cosine"};
+        
+        for (int m = 0; m < lshMethods.length; m++) {
+            KNNClassifier exact = new KNNClassifier();
+            exact.setK(k);
+            exact.setSearchMethod(exactMethods[m]);
+            exact.train(split.getTrain());
+            
+            int[][] trueNeighbors = new int[test.size()][];
+            double exactTime = timeNeighbors(exact, test, trueNeighbors);
+            
+            System.out.printf("%s exact: %.1f us per query\n", names[m], exactTime / test.size() / 1e3);
+            
+            for (int tables : new int[]{5, 10, 20}) {
+                for (int bits : new int[]{8, 12, 16}) {
+                    for (boolean reRank : new boolean[]{true, false}) {
+                        KNNClassifier lsh = new KNNClassifier();
+                        lsh.setK(k);
+                        lsh.setSearchMethod(lshMethods[m]);
+                        lsh.setLSHParameters(tables, bits, reRank);
+                        lsh.train(split.getTrain());
+                        
+                        int[][] neighbors = new int[test.size()][];
+                        double time = timeNeighbors(lsh, test, neighbors);
+                        
+                        System.out.printf("%s LSH %2d tables %2d bits%s: recall %.3f  %.1f us per query  speedup %.2fx\n",
+                                names[m], tables, bits, reRank ? " re-ranked" : "", getRecall(trueNeighbors, neighbors),
+                                time / test.size() / 1e3, exactTime / time);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * @param trueNeighbors the true neighbors of each example
+     * @param neighbors the neighbors found for each example
+     * @return the fraction of the true neighbors that were found
+     */
+    private static double getRecall(int[][] trueNeighbors, int[][] neighbors) {
+        int found = 0;
+        int total = 0;
+        
+        for (int i = 0; i < trueNeighbors.length; i++) {
+            for (int id : trueNeighbors[i]) {
+                for (int approx : neighbors[i]) {
+                    if (approx == id) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+            
+            total += trueNeighbors[i].length;
+        }
+        
+        return (double) found / total;
+    }
+    
+    /**
+     * Find the neighbors of each test example, once to warm up the JIT and then timed
+     * 
+     * @param knn a trained KNN classifier
+     * @param test the examples
+     * @param neighbors where to put the neighbors of each example
+     * @return the time it took in nanoseconds
+     */
+    private static double timeNeighbors(KNNClassifier knn, List<Example> test, int[][] neighbors) {
+        for (Example example : test) {
+            knn.getNeighbors(example);
+        }
+        
+        long start = System.nanoTime();
+        
+        for (int i = 0; i < neighbors.length; i++) {
+            neighbors[i] = knn.getNeighbors(test.get(i));
+        }
+        
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * @return the number of bytes the current thread has allocated, or -1 if the JVM can't tell
+     */
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        
+        return -1;
+    }
+    
     /**
      * Main method to run the experiment
      */
@@ -13,6 +13,9 @@ public class Main {
         // Create experimenter
         Experimenter experimenter = new Experimenter();
         
+        // keep the parsed data around so later runs don't have to tokenize it again
+        experimenter.setDataSetCache(new DataSetCache("data/.cache"));
+        
         // Run MultiLR performance assessment
         experimenter.assessLRPerformance("data/wines.train");
         
@@ -3,6 +3,8 @@ package ml.classifiers;
 import ml.data.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.Map;
 
@@ -13,8 +15,9 @@ import java.util.Map;
  * @author Pavel Filippov and Tommy Liu
  * Assignment 5
  */
-public class AVAClassifier implements Classifier {
+public class AVAClassifier implements SeedableClassifier {
     private ClassifierFactory factory;
+    private Random rand = new Random(); // picks the seeds of the binary classifiers that are seedable
     private ArrayList<Classifier> classifiers;
     
     private ArrayList<Double> class1Labels;
@@ -36,30 +39,43 @@ public class AVAClassifier implements Classifier {
     }
 
     /**
-     * Create a binary dataset for a pair of classes.
+     * Set the random seed, which seeds the binary classifiers (if they're
+     * SeedableClassifiers) so that training can be repeated.
+     * 
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        rand = new Random(seed);
+    }
+
+    /**
+     * Create a binary dataset for a pair of classes.  Only the examples of the two
+     * classes are visited, using the data set's per class example lists.
      * 
      * @param originalData the original multiclass dataset
-     * @param positiveClass the first class (treated as positive)
-     * @param negativeClass the second class (treated as negative)
+     * @param positiveClass the class id of the first class (treated as positive)
+     * @param negativeClass the class id of the second class (treated as negative)
      * @return binary dataset for the pair classification
      */
-    private DataSet createBinaryDataset(DataSet originalData, Double positiveClass, Double negativeClass) {
-        DataSet binaryData = new DataSet(originalData.getFeatureMap());
+    private DataSet createBinaryDataset(DataSet originalData, int positiveClass, int negativeClass) {
+        DataSet binaryData = new DataSet(originalData);
+        List<Example> examples = originalData.getData();
+        int[] positives = originalData.getClassExamples(positiveClass);
+        int[] negatives = originalData.getClassExamples(negativeClass);
         
-        for (Example example : originalData.getData()) {
-            double label = example.getLabel();
-            
-            // Only include examples from the two classes we're comparing
-            if (Math.abs(label - positiveClass) < 0.001) {
-                Example binaryExample = new Example(example);
+        // merge the two lists so the examples stay in the same order as in originalData
+        int p = 0;
+        int n = 0;
+        while (p < positives.length || n < negatives.length) {
+            Example binaryExample;
+            if (n == negatives.length || (p < positives.length && positives[p] < negatives[n])) {
+                binaryExample = examples.get(positives[p++]).copy();
                 binaryExample.setLabel(1.0); // positive class
-                binaryData.addData(binaryExample);
-            } else if (Math.abs(label - negativeClass) < 0.001) {
-                Example binaryExample = new Example(example);
+            } else {
+                binaryExample = examples.get(negatives[n++]).copy();
                 binaryExample.setLabel(-1.0); // negative class
-                binaryData.addData(binaryExample);
             }
-            // Skip examples not belonging to either class (no continue needed)
+            binaryData.addData(binaryExample);
         }
         
         return binaryData;
@@ -86,11 +102,15 @@ public class AVAClassifier implements Classifier {
                 class1Labels.add(label1);
                 class2Labels.add(label2);
                 
-                // Create binary dataset for this class vs all others
-                DataSet binaryData = createBinaryDataset(data, label1, label2);
+                // Create binary dataset for this pair of classes
+                LabelDictionary dictionary = data.getLabelDictionary();
+                DataSet binaryData = createBinaryDataset(data, dictionary.getClassId(label1), dictionary.getClassId(label2));
                 
                 // Create and train classifier for this pair
                 Classifier binaryClassifier = factory.getClassifier();
+                if (binaryClassifier instanceof SeedableClassifier) {
+                    ((SeedableClassifier) binaryClassifier).setSeed(rand.nextLong());
+                }
                 binaryClassifier.train(binaryData);
                 classifiers.add(binaryClassifier);
             }
@@ -122,7 +142,7 @@ public class AVAClassifier implements Classifier {
             double confidence = classifier.confidence(example);
             
             // Get prediction from this classifier
-            Example binaryExample = new Example(example);
+            Example binaryExample = example.copy();
             binaryExample.setLabel(0.0); // set dummy label for classification
             double prediction = classifier.classify(binaryExample);
             
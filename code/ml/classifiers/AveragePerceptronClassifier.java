@@ -1,74 +1,93 @@
 package ml.classifiers;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.Arrays;
 
-import ml.data.DataSet;
 import ml.data.Example;
 
 /**
  * Average perceptron classifier.  We'll utilize most of the code from the
- * PerceptronClassifier class and only need to rewrite the train method.
+ * PerceptronClassifier class and only need to rewrite how the weights are
+ * updated for each example.
  * 
  * @author dkauchak
  *
  */
 public class AveragePerceptronClassifier extends PerceptronClassifier {
+	// the running sums of the weights and b over all of the training steps
+	private double[] sumWeights;
+	private double sumB;
+	private int total;
+	private int lastUpdate;
 	
-	public void train(DataSet data) {
-		initializeWeights(data.getAllFeatureIndices());
+	// Rather than adding every weight into the sum on every update, each weight is only
+	// added in when it changes (or at the very end), multiplied by the number of updates
+	// it went unchanged for.  updateTime counts the update steps and lastChanged records
+	// the step at which each weight was last added into sumWeights.
+	private int updateTime;
+	private int[] lastChanged;
+	
+	protected void initializeWeights(int numFeatures){
+		super.initializeWeights(numFeatures);
 		
-		ArrayList<Example> training = (ArrayList<Example>)data.getData().clone();
-
-		int total = 0;
-		int lastUpdate = 1;
+		total = 0;
+		lastUpdate = 1;
 		
 		// initialize the weights
-		HashMap<Integer, Double> sumWeights = getZeroWeights(weights.keySet());
-		double sumB = 0;
+		sumWeights = getZeroWeights(weights.length);
+		sumB = 0;
 		
-		for( int it = 0; it < iterations; it++ ){
-			Collections.shuffle(training);
-			
-			for( Example e: training ){
-				if( getPrediction(e) != e.getLabel() ){
-					double label = e.getLabel();
-
-					// update the weights
-					for( Integer featureIndex: weights.keySet() ){
-						double featureValue = e.getFeature(featureIndex);
-						double oldSumWeight = sumWeights.get(featureIndex);
-						double oldWeight = weights.get(featureIndex);
-
-						// update the aggregate weights
-						sumWeights.put(featureIndex, oldSumWeight + lastUpdate*oldWeight);
+		updateTime = 0;
+		lastChanged = new int[weights.length];
+	}
+	
+	protected void growWeights(int numFeatures){
+		super.growWeights(numFeatures);
+		
+		// new features have had a weight of 0 the whole time, so nothing to add to their sums
+		sumWeights = Arrays.copyOf(sumWeights, weights.length);
+		lastChanged = Arrays.copyOf(lastChanged, weights.length);
+	}
+	
+	protected void trainExample(Example e){
+		if( getPrediction(e) != e.getLabel() ){
+			double label = e.getLabel();
+			updateTime += lastUpdate;
 
-						
-						// update the basic weights
-						weights.put(featureIndex, oldWeight + featureValue*label);						
-					}
+			// update the weights, only the non-zero features change
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				int featureIndex = e.getIndexAt(i);
 
-					// update sumB
-					sumB += lastUpdate*b;
-					
-					// update b
-					b += label;
-					
-					lastUpdate = 0;
-				}
+				// update the aggregate weights
+				sumWeights[featureIndex] += (updateTime-lastChanged[featureIndex])*weights[featureIndex];
+				lastChanged[featureIndex] = updateTime;
 				
-				total++;
-				lastUpdate++;
+				// update the basic weights
+				weights[featureIndex] += e.getValueAt(i)*label;
 			}
+
+			// update sumB
+			sumB += lastUpdate*b;
+			
+			// update b
+			b += label;
+			
+			lastUpdate = 0;
 		}
 		
+		total++;
+		lastUpdate++;
+	}
+	
+	protected void finishTraining(){
 		// normalize the weights and save back into the weights vector
-		for( Integer featureIndex: sumWeights.keySet() ){
-			weights.put(featureIndex, sumWeights.get(featureIndex)/total);
+		for( int featureIndex = 0; featureIndex < weights.length; featureIndex++ ){
+			sumWeights[featureIndex] += (updateTime-lastChanged[featureIndex])*weights[featureIndex];
+			weights[featureIndex] = sumWeights[featureIndex]/total;
 		}
 		
 		b = sumB/total;
+		
+		sumWeights = null;
+		lastChanged = null;
 	}
 }
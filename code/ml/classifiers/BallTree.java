@@ -0,0 +1,130 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ml.data.Example;
+
+/**
+ * A ball tree over the training examples: each node is a ball (center and radius)
+ * containing its examples, and is split in two along the direction between two
+ * far apart examples.  Unlike the boxes of a KDTree, the bound on the distance to
+ * a ball doesn't get looser as the number of features goes up, so this works better
+ * for a moderate number of features (up to around a hundred).
+ */
+class BallTree extends PartitionTree {
+	private double[] centers = new double[0]; // dims entries per node
+	private double[] radii = new double[0];
+	
+	/**
+	 * @param examples the training examples
+	 * @param norms the squared length of each training example
+	 * @param dims the number of features
+	 */
+	public BallTree(List<Example> examples, double[] norms, int dims){
+		super(examples, norms, dims);
+		build();
+	}
+	
+	protected void describe(int node, int from, int to){
+		if( (node+1)*dims > centers.length ){
+			centers = Arrays.copyOf(centers, Math.max(2*centers.length, (node+1)*dims));
+		}
+		
+		if( node >= radii.length ){
+			radii = Arrays.copyOf(radii, Math.max(2*radii.length, 16));
+		}
+		
+		int offset = node*dims;
+		Arrays.fill(centers, offset, offset+dims, 0.0);
+		
+		for( int i = from; i < to; i++ ){
+			double[] point = points[order[i]];
+			
+			for( int d = 0; d < dims; d++ ){
+				centers[offset+d] += point[d];
+			}
+		}
+		
+		for( int d = 0; d < dims; d++ ){
+			centers[offset+d] /= to-from;
+		}
+		
+		double radius = 0;
+		
+		for( int i = from; i < to; i++ ){
+			radius = Math.max(radius, getSquaredDistance(points[order[i]], centers, offset));
+		}
+		
+		radii[node] = Math.sqrt(radius);
+	}
+	
+	protected int partition(int node, int from, int to){
+		// the farthest example from the center, and then the farthest from that
+		int offset = node*dims;
+		double[] first = points[order[from]];
+		double farthest = -1;
+		
+		for( int i = from; i < to; i++ ){
+			double distance = getSquaredDistance(points[order[i]], centers, offset);
+			
+			if( distance > farthest ){
+				farthest = distance;
+				first = points[order[i]];
+			}
+		}
+		
+		double[] second = first;
+		farthest = -1;
+		
+		for( int i = from; i < to; i++ ){
+			double distance = getSquaredDistance(points[order[i]], first, 0);
+			
+			if( distance > farthest ){
+				farthest = distance;
+				second = points[order[i]];
+			}
+		}
+		
+		if( farthest <= 0 ){
+			// all of the examples are the same
+			return from;
+		}
+		
+		// split at the median of the projections onto the line between them
+		double[] keys = new double[to-from];
+		
+		for( int i = from; i < to; i++ ){
+			double[] point = points[order[i]];
+			double key = 0;
+			
+			for( int d = 0; d < dims; d++ ){
+				key += point[d]*(second[d] - first[d]);
+			}
+			
+			keys[i-from] = key;
+		}
+		
+		return splitAtMedian(keys, from, to);
+	}
+	
+	protected double getLowerBound(int node, double[] query){
+		double distance = Math.sqrt(getSquaredDistance(query, centers, node*dims)) - radii[node];
+		return distance > 0 ? distance*distance : 0.0;
+	}
+	
+	/**
+	 * @return the squared distance between the first dims entries of point and the dims
+	 * entries of other starting at offset
+	 */
+	private double getSquaredDistance(double[] point, double[] other, int offset){
+		double distance = 0;
+		
+		for( int d = 0; d < dims; d++ ){
+			double diff = point[d] - other[offset+d];
+			distance += diff*diff;
+		}
+		
+		return distance;
+	}
+}
@@ -0,0 +1,34 @@
+package ml.classifiers;
+
+import java.util.List;
+
+import ml.data.Example;
+import ml.utils.TopKHeap;
+
+/**
+ * Finds the nearest neighbors by computing the distance to every training example
+ */
+class BruteForceSearch implements NeighborSearch {
+	private List<Example> examples;
+	private double[] norms; // squared length of each training example
+	
+	/**
+	 * @param examples the training examples
+	 * @param norms the squared length of each training example
+	 */
+	public BruteForceSearch(List<Example> examples, double[] norms){
+		this.examples = examples;
+		this.norms = norms;
+	}
+	
+	public void search(Example example, double[] query, double queryNorm, TopKHeap neighbors){
+		for( int i = 0; i < norms.length; i++ ){
+			double distance = KNNClassifier.getSquaredDistance(query, queryNorm, examples.get(i), norms[i]);
+			
+			// most examples aren't close enough, so check before calling offer
+			if( distance <= neighbors.getBound() ){
+				neighbors.offer(distance, i);
+			}
+		}
+	}
+}
@@ -1,12 +1,13 @@
 package ml.classifiers;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import ml.data.DataSet;
 import ml.data.Example;
+import ml.data.FeatureColumns;
 import ml.utils.HashMapCounter;
 
 /**
@@ -25,6 +26,20 @@ public class DecisionTreeClassifier implements Classifier{
 	private DecisionTreeNode decisionTree;
 	private int depthMax = Integer.MAX_VALUE;
 	
+	// only used during training.  Examples are referred to by their id, i.e. their
+	// position in the training data.
+	private List<Example> examples;
+	private FeatureColumns columns; // the examples with a non-zero value for each feature, for splitting
+	private int[] exampleClass; // class number of each example, for counting labels in arrays
+	private int numClasses;
+	
+	// the count table for finding a split: rightCounts[f*numClasses + c] is the number of
+	// examples of class c in the node with a non-zero value for feature f, and rightTotals[f]
+	// the number with a non-zero value for f.  All 0 between nodes.
+	private int[] rightCounts;
+	private int[] rightTotals;
+	private int[] nodeFeatures; // the features with a non-zero rightTotal
+	
 	public void train(DataSet data) {
 		if( data.getData().size() == 0 ){
 			throw new RuntimeException("Tried to train without any data");
@@ -32,7 +47,30 @@ public class DecisionTreeClassifier implements Classifier{
 		
 		featureMap = data.getFeatureMap();
 		featureIndices = data.getAllFeatureIndices();
-		decisionTree = buildTree(data.getData(), new HashSet<Integer>(), depthMax);
+		examples = data.getData();
+		columns = data.getColumns();
+		
+		exampleClass = data.getClassIds();
+		numClasses = data.getLabelDictionary().getNumClasses();
+		rightCounts = new int[data.getNumFeatures()*numClasses];
+		rightTotals = new int[data.getNumFeatures()];
+		nodeFeatures = new int[data.getNumFeatures()];
+		
+		int[] allData = new int[examples.size()];
+		
+		for( int id = 0; id < allData.length; id++ ){
+			allData[id] = id;
+		}
+		
+		decisionTree = buildTree(allData, new boolean[data.getNumFeatures()], 0, depthMax);
+		
+		// let go of the training data
+		examples = null;
+		columns = null;
+		exampleClass = null;
+		rightCounts = null;
+		rightTotals = null;
+		nodeFeatures = null;
 	}
 	
 	/**
@@ -47,19 +85,20 @@ public class DecisionTreeClassifier implements Classifier{
 	/**
 	 * Helper method for building the decision tree.
 	 * 
-	 * @param currentData the data (non-empty) to build the tree over
+	 * @param currentData the ids of the examples (non-empty) to build the tree over
 	 * @param usedFeatures the features that have been used already
+	 * @param numUsed the number of features that have been used already
 	 * @param depthLimit the maximum depth we can build this tree
 	 * @return the learned decision tree
 	 */
-	private DecisionTreeNode buildTree(ArrayList<Example> currentData, HashSet<Integer> usedFeatures, int depthLimit){
+	private DecisionTreeNode buildTree(int[] currentData, boolean[] usedFeatures, int numUsed, int depthLimit){
 		DataMajority majority = getMajorityLabel(currentData);
 				
 		// base cases:
 		// 1. they're all the same label
 		// 2. we're out of features to examine
-		if( majority.majorityCount == currentData.size() ||
-			usedFeatures.size() == featureIndices.size() ||
+		if( majority.majorityCount == currentData.length ||
+			numUsed == featureIndices.size() ||
 			depthLimit == 0){
 			return new DecisionTreeNode(majority.majorityLabel, majority.confidence);
 		}else{
@@ -70,26 +109,26 @@ public class DecisionTreeClassifier implements Classifier{
 			
 			// bestFeature != -1
 			// split on the best feature
-			ArrayList<Example>[] splits = splitData(currentData, bestFeature);
+			int[][] splits = splitData(currentData, bestFeature);
 			
 			// create a new decision tree node
 			DecisionTreeNode node = new DecisionTreeNode(bestFeature);
 			
-			HashSet<Integer> featureCopy = (HashSet<Integer>)usedFeatures.clone();
-			featureCopy.add(bestFeature);
+			boolean[] featureCopy = usedFeatures.clone();
+			featureCopy[bestFeature] = true;
 			
 			// left branch
-			if( splits[0].size() == 0 ){
+			if( splits[0].length == 0 ){
 				node.setLeft(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
 			}else{
-				node.setLeft(buildTree(splits[0],featureCopy, depthLimit-1));
+				node.setLeft(buildTree(splits[0], featureCopy, numUsed+1, depthLimit-1));
 			}
 			
 			// right branch
-			if( splits[1].size() == 0 ){
+			if( splits[1].length == 0 ){
 				node.setRight(new DecisionTreeNode(majority.majorityLabel, majority.confidence));
 			}else{
-				node.setRight(buildTree(splits[1], featureCopy, depthLimit-1));
+				node.setRight(buildTree(splits[1], featureCopy, numUsed+1, depthLimit-1));
 			}
 			
 			return node;
@@ -99,17 +138,47 @@ public class DecisionTreeClassifier implements Classifier{
 	/**
 	 * Get the best feature to split on based on training error.
 	 * 
-	 * @param currentData the current set of examples
+	 * The examples that go right are the ones with a non-zero value for the feature, so one
+	 * pass over the non-zero features of the node's examples counts the classes going right
+	 * for every feature at once.  The left counts are what's left over, and the features
+	 * that none of the examples have all split the same way (everything left).
+	 * 
+	 * @param currentData the ids of the current set of examples
 	 * @param usedFeatures which features have been used already and are NOT eligible for splitting on
 	 * @return the index of the best feature
 	 */
-	private int getBestFeatureIndex(ArrayList<Example> currentData, HashSet<Integer> usedFeatures){
+	private int getBestFeatureIndex(int[] currentData, boolean[] usedFeatures){
+		int[] nodeCounts = new int[numClasses];
+		int numNodeFeatures = 0;
+		
+		for( int id: currentData ){
+			int c = exampleClass[id];
+			nodeCounts[c]++;
+			
+			Example e = examples.get(id);
+			
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				if( e.getValueAt(i) != DecisionTreeNode.LEFT_BRANCH ){
+					int featureIndex = e.getIndexAt(i);
+					
+					if( rightTotals[featureIndex]++ == 0 ){
+						nodeFeatures[numNodeFeatures++] = featureIndex;
+					}
+					
+					rightCounts[featureIndex*numClasses + c]++;
+				}
+			}
+		}
+		
+		// the error for the features that send everything left
+		double allLeftError = averageTrainingError(currentData.length, nodeCounts, -1);
 		int bestFeature = -1;
 		double bestFeatureScore = 1.0; // lower is better for now
 		
 		for( int featureIndex: featureIndices){
-			if( !usedFeatures.contains(featureIndex) ){
-				double error = averageTrainingError(currentData, featureIndex);
+			if( !usedFeatures[featureIndex] ){
+				double error = rightTotals[featureIndex] == 0 ? allLeftError :
+					averageTrainingError(currentData.length, nodeCounts, featureIndex);
 									
 				if( error < bestFeatureScore ||
 					(error == bestFeatureScore && featureIndex < bestFeature )){
@@ -119,49 +188,86 @@ public class DecisionTreeClassifier implements Classifier{
 			}
 		}
 		
+		// clear the count table for the next node
+		for( int i = 0; i < numNodeFeatures; i++ ){
+			int featureIndex = nodeFeatures[i];
+			rightTotals[featureIndex] = 0;
+			Arrays.fill(rightCounts, featureIndex*numClasses, (featureIndex+1)*numClasses, 0);
+		}
+		
 		return bestFeature;
 	}
 	
 	/**
-	 * Get the average training error on this data set if we split on featureIndex
+	 * Get the average training error on the node's examples if we split on featureIndex,
+	 * from the count table
 	 * 
-	 * @param data the current data
-	 * @param featureIndex the feature we're considering splitting on
+	 * @param size the number of examples in the current data
+	 * @param nodeCounts the class counts for the current data
+	 * @param featureIndex the feature we're considering splitting on, or -1 for
+	 * a feature that sends all of the examples left
 	 * @return the error
 	 */
-	private double averageTrainingError(ArrayList<Example> data, int featureIndex){		
-		ArrayList<Example>[] splits = splitData(data, featureIndex);
+	private double averageTrainingError(int size, int[] nodeCounts, int featureIndex){
+		int leftCount = 0;
+		int rightCount = 0;
 		
-		int leftCount = splits[0].size() > 0 ? getMajorityLabel(splits[0]).majorityCount : 0;
-		int rightCount = splits[1].size() > 0 ? getMajorityLabel(splits[1]).majorityCount : 0;
+		for( int c = 0; c < numClasses; c++ ){
+			int right = featureIndex == -1 ? 0 : rightCounts[featureIndex*numClasses + c];
+			leftCount = Math.max(leftCount, nodeCounts[c]-right);
+			rightCount = Math.max(rightCount, right);
+		}
 		
-		double accuracy = (leftCount+rightCount)/(double)data.size();
+		double accuracy = (leftCount+rightCount)/(double)size;
 		return 1-accuracy;
 	}
 	
 	/**
 	 * Split the data based on featureIndex
 	 * 
-	 * @param data the data to be split
+	 * The examples with a non-zero value for featureIndex (the right branch) are read off
+	 * of its column, which is in example id order like data, so the two are merged in one
+	 * sequential pass.  If the column is much longer than data (deep in the tree), each
+	 * example's value is looked up instead.
+	 * 
+	 * @param data the ids of the data to be split, in increasing order
 	 * @param featureIndex the feature to split on
 	 * @return the split of the data.  Entry 0 is the left branch data and entry 1 the right branch data.
 	 */
-	private ArrayList<Example>[] splitData(ArrayList<Example> data, int featureIndex){
+	private int[][] splitData(int[] data, int featureIndex){
 		// split the data based on this feature
-		ArrayList<Example>[] splits = new ArrayList[2];
-		splits[0] = new ArrayList<Example>();
-		splits[1] = new ArrayList<Example>();
+		int[] left = new int[data.length];
+		int[] right = new int[data.length];
+		int leftSize = 0;
+		int rightSize = 0;
+		
+		int pos = columns.getColumnStart(featureIndex);
+		int end = columns.getColumnEnd(featureIndex);
+		boolean merge = end-pos <= 8*data.length;
+		
+		for( int id: data){
+			boolean nonZero;
+			
+			if( merge ){
+				while( pos < end && columns.getExampleAt(pos) < id ){
+					pos++;
+				}
 				
-		for( Example d: data){
-			double value = d.getFeature(featureIndex);
+				nonZero = pos < end && columns.getExampleAt(pos) == id;
+			}else{
+				nonZero = examples.get(id).getFeature(featureIndex) != DecisionTreeNode.LEFT_BRANCH;
+			}
 			
-			if( value == DecisionTreeNode.LEFT_BRANCH ){
-				splits[0].add(d);
+			if( nonZero ){
+				right[rightSize++] = id;
 			}else{
-				splits[1].add(d);
+				left[leftSize++] = id;
 			}
 		}
 		
+		int[][] splits = new int[2][];
+		splits[0] = Arrays.copyOf(left, leftSize);
+		splits[1] = Arrays.copyOf(right, rightSize);
 		return splits;
 	}
 	
@@ -172,14 +278,14 @@ public class DecisionTreeClassifier implements Classifier{
 	/**
 	 * given the data, calculate the majority label and how many times it occurs in the data
 	 * 
-	 * @param data
+	 * @param data the ids of the examples
 	 * @return majority information from the data
 	 */
-	private DataMajority getMajorityLabel(ArrayList<Example> data){
+	private DataMajority getMajorityLabel(int[] data){
 		HashMapCounter<Double> counter = new HashMapCounter<Double>();
 		
-		for( Example d: data ){
-			counter.increment(d.getLabel());
+		for( int id: data ){
+			counter.increment(examples.get(id).getLabel());
 		}
 		
 		double maxLabel = 0.0;
@@ -192,7 +298,7 @@ public class DecisionTreeClassifier implements Classifier{
 			}
 		}
 		
-		return new DataMajority(maxLabel, maxCount, ((double)maxCount)/data.size());
+		return new DataMajority(maxLabel, maxCount, ((double)maxCount)/data.length);
 	}
 		
 	@Override
@@ -0,0 +1,331 @@
+package ml.classifiers;
+
+import java.util.List;
+
+import ml.data.Example;
+import ml.utils.TopKHeap;
+
+/**
+ * Finds the nearest neighbors by cosine similarity with an inverted index, which is
+ * the way to go for text: each feature (word) has a posting list of the training
+ * examples it occurs in, and a query only looks at the posting lists of its own words,
+ * so training examples that don't share any words with it are never touched.
+ * 
+ * The posting lists are scored a word at a time with max-score pruning: each query
+ * word has an upper bound on what it can add to a similarity (its query weight times
+ * the largest weight in its posting list), and the words are scored in decreasing
+ * order of bound.  Once the words left add up to less than the k-th best similarity
+ * so far, no example that hasn't been seen yet can be a neighbor, so the rest of the
+ * posting lists are only used to finish scoring the examples already seen (looking
+ * them up rather than reading the whole list when there are few of them), and examples
+ * are dropped once what's left can't get them to the k-th best similarity.
+ * 
+ * The neighbors are put in the heap with a distance of -similarity.  Feature values
+ * have to be non-negative (e.g. word counts or tf-idf weights).
+ */
+class InvertedIndex implements NeighborSearch {
+	// how much rounding error is allowed for when pruning, so the result is
+	// the same as scoring every training example
+	private static final double SLACK = 1e-12;
+	
+	private int numExamples;
+	private int numFeatures;
+	
+	// the posting list for feature f is positions postingStarts[f] to postingStarts[f+1]-1
+	private int[] postingStarts;
+	private int[] postingIds; // training example positions, increasing in each list
+	private double[] postingWeights; // feature values divided by the example's length
+	private double[] maxWeights; // the largest weight in each posting list
+	
+	// buffers for scoring a query, one set per thread
+	private ThreadLocal<Accumulators> accumulators = new ThreadLocal<Accumulators>();
+	
+	/**
+	 * @param examples the training examples
+	 * @param norms the squared length of each training example
+	 * @param numFeatures the number of features
+	 */
+	public InvertedIndex(List<Example> examples, double[] norms, int numFeatures){
+		this.numExamples = examples.size();
+		this.numFeatures = numFeatures;
+		
+		// count the postings for each feature, then fill them in example order
+		postingStarts = new int[numFeatures+1];
+		
+		for( Example e: examples ){
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				int featureIndex = e.getIndexAt(i);
+				double value = e.getValueAt(i);
+				
+				if( value < 0 ){
+					throw new RuntimeException("The inverted index needs non-negative feature values: " + value);
+				}
+				
+				if( value > 0 && featureIndex < numFeatures ){
+					postingStarts[featureIndex+1]++;
+				}
+			}
+		}
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			postingStarts[f+1] += postingStarts[f];
+		}
+		
+		postingIds = new int[postingStarts[numFeatures]];
+		postingWeights = new double[postingIds.length];
+		maxWeights = new double[numFeatures];
+		int[] next = new int[numFeatures];
+		System.arraycopy(postingStarts, 0, next, 0, numFeatures);
+		
+		for( int id = 0; id < numExamples; id++ ){
+			Example e = examples.get(id);
+			double length = Math.sqrt(norms[id]);
+			
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				int featureIndex = e.getIndexAt(i);
+				double value = e.getValueAt(i);
+				
+				if( value > 0 && featureIndex < numFeatures ){
+					int pos = next[featureIndex]++;
+					postingIds[pos] = id;
+					postingWeights[pos] = value/length;
+					maxWeights[featureIndex] = Math.max(maxWeights[featureIndex], postingWeights[pos]);
+				}
+			}
+		}
+	}
+	
+	public void search(Example example, double[] query, double queryNorm, TopKHeap neighbors){
+		int k = neighbors.getK();
+		Accumulators acc = getAccumulators(example.getNumNonZero(), k);
+		double[] scores = acc.scores;
+		int[] candidates = acc.candidates;
+		int numCandidates = 0;
+		int n = 0;
+		double length = Math.sqrt(queryNorm);
+		
+		// the query's words that are in the index, with their upper bounds
+		for( int i = 0; i < example.getNumNonZero(); i++ ){
+			int featureIndex = example.getIndexAt(i);
+			double value = example.getValueAt(i);
+			
+			if( featureIndex < numFeatures && value > 0 && postingStarts[featureIndex] < postingStarts[featureIndex+1] ){
+				acc.weights[n] = value/length;
+				acc.bounds[n] = acc.weights[n]*maxWeights[featureIndex];
+				acc.starts[n] = postingStarts[featureIndex];
+				acc.ends[n] = postingStarts[featureIndex+1];
+				n++;
+			}
+		}
+		
+		acc.sortByBound(n);
+		
+		// remaining[t] is the most that words t to n-1 can add to a similarity
+		double[] remaining = acc.remaining;
+		
+		for( int t = n-1; t >= 0; t-- ){
+			remaining[t] = acc.bounds[t] + (t == n-1 ? 0.0 : remaining[t+1]);
+		}
+		
+		boolean adding = true; // whether examples not seen yet can still be neighbors
+		double threshold = Double.NEGATIVE_INFINITY; // a lower bound on the k-th best similarity
+		long postingsRead = 0;
+		long thresholdCost = 0;
+		
+		for( int t = 0; t < n; t++ ){
+			double weight = acc.weights[t];
+			int start = acc.starts[t];
+			int end = acc.ends[t];
+			
+			// finding the k-th best score (and dropping the candidates that can't get to it any
+			// more) takes a pass over the candidates, so to keep it from costing more than the
+			// scoring, it's only done while the candidates looked at for it so far are fewer
+			// than the postings read (an earlier value is still a lower bound, scores only go up)
+			if( numCandidates >= k && thresholdCost + 2*numCandidates <= postingsRead ){
+				thresholdCost += 2*numCandidates;
+				threshold = getThreshold(acc, numCandidates);
+				
+				// once the rest of the words add up to less than the k-th best score so far,
+				// examples without any of the words seen so far can't be neighbors
+				if( remaining[t] < threshold - SLACK ){
+					adding = false;
+					int kept = 0;
+					
+					for( int i = 0; i < numCandidates; i++ ){
+						int id = candidates[i];
+						
+						if( scores[id] + remaining[t] >= threshold - SLACK ){
+							candidates[kept++] = id;
+						}else{
+							scores[id] = 0.0;
+						}
+					}
+					
+					numCandidates = kept;
+				}
+			}
+			
+			if( adding ){
+				postingsRead += end-start;
+				
+				for( int pos = start; pos < end; pos++ ){
+					int id = postingIds[pos];
+					
+					if( scores[id] == 0.0 ){
+						candidates[numCandidates++] = id;
+					}
+					
+					scores[id] += weight*postingWeights[pos];
+				}
+			}else{
+				// look the candidates up in the posting list if that's cheaper than reading all of it
+				int lookupCost = numCandidates*(32-Integer.numberOfLeadingZeros(end-start));
+				postingsRead += Math.min(lookupCost, end-start);
+				
+				if( lookupCost < end-start ){
+					for( int i = 0; i < numCandidates; i++ ){
+						int id = candidates[i];
+						int pos = find(start, end, id);
+						
+						if( pos >= 0 ){
+							scores[id] += weight*postingWeights[pos];
+						}
+					}
+				}else{
+					for( int pos = start; pos < end; pos++ ){
+						int id = postingIds[pos];
+						
+						if( scores[id] != 0.0 ){
+							scores[id] += weight*postingWeights[pos];
+						}
+					}
+				}
+			}
+		}
+		
+		for( int i = 0; i < numCandidates; i++ ){
+			int id = candidates[i];
+			neighbors.offer(-scores[id], id);
+			scores[id] = 0.0;
+		}
+		
+		// examples that don't share any words have a similarity of 0, so if there
+		// aren't k that do, the rest are the first examples that don't
+		for( int id = 0; id < numExamples && neighbors.size() < k; id++ ){
+			if( !contains(neighbors, id) ){
+				neighbors.offer(0.0, id);
+			}
+		}
+	}
+	
+	/**
+	 * @return the k-th largest score of the candidates
+	 */
+	private double getThreshold(Accumulators acc, int numCandidates){
+		TopKHeap best = acc.best;
+		best.clear();
+		
+		for( int i = 0; i < numCandidates; i++ ){
+			int id = acc.candidates[i];
+			best.offer(-acc.scores[id], id);
+		}
+		
+		return -best.getBound();
+	}
+	
+	/**
+	 * @return the position of id in the posting list from start to end-1, or -1 if it isn't there
+	 */
+	private int find(int start, int end, int id){
+		int low = start;
+		int high = end-1;
+		
+		while( low <= high ){
+			int mid = (low + high) >>> 1;
+			
+			if( postingIds[mid] < id ){
+				low = mid+1;
+			}else if( postingIds[mid] > id ){
+				high = mid-1;
+			}else{
+				return mid;
+			}
+		}
+		
+		return -1;
+	}
+	
+	private static boolean contains(TopKHeap neighbors, int id){
+		for( int i = 0; i < neighbors.size(); i++ ){
+			if( neighbors.getId(i) == id ){
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private Accumulators getAccumulators(int size, int k){
+		Accumulators acc = accumulators.get();
+		
+		if( acc == null || acc.weights.length < size || acc.best.getK() != k ){
+			acc = new Accumulators(Math.max(size, 64), numExamples, k);
+			accumulators.set(acc);
+		}
+		
+		return acc;
+	}
+	
+	/**
+	 * A query's words (their weights, upper bounds and posting lists) and
+	 * the similarity scores accumulated for the training examples
+	 */
+	private static class Accumulators {
+		public double[] weights;
+		public double[] bounds;
+		public double[] remaining;
+		public int[] starts;
+		public int[] ends;
+		
+		public double[] scores; // similarity so far of each training example, all 0 between queries
+		public int[] candidates; // the training examples with a non-zero score
+		public TopKHeap best; // for finding the k-th best score
+		
+		public Accumulators(int size, int numExamples, int k){
+			weights = new double[size];
+			bounds = new double[size];
+			remaining = new double[size];
+			starts = new int[size];
+			ends = new int[size];
+			scores = new double[numExamples];
+			candidates = new int[numExamples];
+			best = new TopKHeap(k);
+		}
+		
+		/**
+		 * Sort the first n words in decreasing order of bound (an insertion sort,
+		 * queries only have so many words)
+		 */
+		public void sortByBound(int n){
+			for( int i = 1; i < n; i++ ){
+				double weight = weights[i];
+				double bound = bounds[i];
+				int start = starts[i];
+				int end = ends[i];
+				int j = i-1;
+				
+				for( ; j >= 0 && bounds[j] < bound; j-- ){
+					weights[j+1] = weights[j];
+					bounds[j+1] = bounds[j];
+					starts[j+1] = starts[j];
+					ends[j+1] = ends[j];
+				}
+				
+				weights[j+1] = weight;
+				bounds[j+1] = bound;
+				starts[j+1] = start;
+				ends[j+1] = end;
+			}
+		}
+	}
+}
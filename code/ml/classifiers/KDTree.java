@@ -0,0 +1,85 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ml.data.Example;
+
+/**
+ * A k-d tree over the training examples: each node is split at the median of the
+ * feature its examples are most spread out along, and the distance from a query to
+ * a node is bounded by the distance to the bounding box of its examples.  This
+ * works well with few features (up to 10-20 or so).
+ */
+class KDTree extends PartitionTree {
+	// bounding box of each node, dims entries per node
+	private double[] boxMin = new double[0];
+	private double[] boxMax = new double[0];
+	
+	/**
+	 * @param examples the training examples
+	 * @param norms the squared length of each training example
+	 * @param dims the number of features
+	 */
+	public KDTree(List<Example> examples, double[] norms, int dims){
+		super(examples, norms, dims);
+		build();
+	}
+	
+	protected void describe(int node, int from, int to){
+		if( (node+1)*dims > boxMin.length ){
+			boxMin = Arrays.copyOf(boxMin, Math.max(2*boxMin.length, (node+1)*dims));
+			boxMax = Arrays.copyOf(boxMax, boxMin.length);
+		}
+		
+		int offset = node*dims;
+		Arrays.fill(boxMin, offset, offset+dims, Double.POSITIVE_INFINITY);
+		Arrays.fill(boxMax, offset, offset+dims, Double.NEGATIVE_INFINITY);
+		
+		for( int i = from; i < to; i++ ){
+			double[] point = points[order[i]];
+			
+			for( int d = 0; d < dims; d++ ){
+				boxMin[offset+d] = Math.min(boxMin[offset+d], point[d]);
+				boxMax[offset+d] = Math.max(boxMax[offset+d], point[d]);
+			}
+		}
+	}
+	
+	protected int partition(int node, int from, int to){
+		int offset = node*dims;
+		int splitDim = 0;
+		
+		for( int d = 1; d < dims; d++ ){
+			if( boxMax[offset+d] - boxMin[offset+d] > boxMax[offset+splitDim] - boxMin[offset+splitDim] ){
+				splitDim = d;
+			}
+		}
+		
+		if( dims == 0 || boxMax[offset+splitDim] == boxMin[offset+splitDim] ){
+			// all of the examples are the same
+			return from;
+		}
+		
+		double[] keys = new double[to-from];
+		
+		for( int i = from; i < to; i++ ){
+			keys[i-from] = points[order[i]][splitDim];
+		}
+		
+		return splitAtMedian(keys, from, to);
+	}
+	
+	protected double getLowerBound(int node, double[] query){
+		int offset = node*dims;
+		double bound = 0;
+		
+		for( int d = 0; d < dims; d++ ){
+			double q = query[d];
+			double diff = q < boxMin[offset+d] ? boxMin[offset+d] - q : (q > boxMax[offset+d] ? q - boxMax[offset+d] : 0.0);
+			bound += diff*diff;
+		}
+		
+		return bound;
+	}
+}
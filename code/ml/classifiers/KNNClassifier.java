@@ -1,122 +1,670 @@
 package ml.classifiers;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.PriorityQueue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import ml.data.DataSet;
 import ml.data.Example;
-import ml.utils.HashMapCounter;
+import ml.data.LabelDictionary;
+import ml.utils.TopKHeap;
 
 /**
- * k-NN classifier based on euclidean distance.
+ * k-NN classifier based on euclidean distance (or cosine similarity, see
+ * setSearchMethod).
  * 
  * @author dkauchak
- *
+ * 
  */
-public class KNNClassifier implements Classifier {
+public class KNNClassifier implements SeedableClassifier {
+	// ways of finding the nearest neighbors (see setSearchMethod)
+	public static final int BRUTE_FORCE = 0;
+	public static final int KD_TREE = 1;
+	public static final int BALL_TREE = 2;
+	public static final int SPATIAL_TREE = 3; // a KD_TREE or BALL_TREE depending on the number of features
+	public static final int INVERTED_INDEX = 4; // cosine similarity, for text
+	public static final int LSH_EUCLIDEAN = 5; // approximate
+	public static final int LSH_COSINE = 6; // approximate
+	
+	// the most features to use a k-d tree / ball tree for with SPATIAL_TREE, past
+	// these the trees can't rule out enough of the data to beat checking all of it
+	private static final int MAX_KD_TREE_FEATURES = 16;
+	private static final int MAX_BALL_TREE_FEATURES = 100;
+	
+	// classifyAll handles the queries in blocks of at most MAX_QUERY_BLOCK, small enough
+	// that the block's queries (numFeatures doubles each) take at most MAX_BLOCK_DOUBLES
+	private static final int MAX_QUERY_BLOCK = 64;
+	private static final int MAX_BLOCK_DOUBLES = 1 << 18;
+	
 	private DataSet train;
 	private int k = 5;
+	private int searchMethod = BRUTE_FORCE;
+	private NeighborSearch search;
+	
+	// locality-sensitive hashing parameters (see setLSHParameters)
+	private int lshTables = 20;
+	private int lshBits = 8;
+	private boolean reRank = true;
+	private long lshSeed = 0; // for picking the random projections
+	
+	// the squared length of each training example, so the distance to a training
+	// example only needs the dot product with it (see getSquaredDistance)
+	private double[] norms;
+	private int numFeatures;
+	
+	private LabelDictionary labels;
+	private int[] classIds; // class id of each training example
+	
+	// buffers reused from query to query, one set per thread so examples
+	// can be classified concurrently
+	private ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>();
 	
 	@Override
 	public void train(DataSet data) {
 		train = data;
-		// done!
+		numFeatures = data.getNumFeatures();
+		labels = data.getLabelDictionary();
+		classIds = data.getClassIds();
+		norms = new double[data.getData().size()];
+		
+		for( int i = 0; i < norms.length; i++ ){
+			norms[i] = getSquaredNorm(data.getData().get(i));
+		}
+		
+		int method = searchMethod;
+		
+		if( method == SPATIAL_TREE ){
+			method = numFeatures <= MAX_KD_TREE_FEATURES ? KD_TREE :
+				(numFeatures <= MAX_BALL_TREE_FEATURES ? BALL_TREE : BRUTE_FORCE);
+		}
+		
+		if( method == KD_TREE ){
+			search = new KDTree(data.getData(), norms, numFeatures);
+		}else if( method == BALL_TREE ){
+			search = new BallTree(data.getData(), norms, numFeatures);
+		}else if( method == INVERTED_INDEX ){
+			search = new InvertedIndex(data.getData(), norms, numFeatures);
+		}else if( method == LSH_EUCLIDEAN || method == LSH_COSINE ){
+			search = new LSHSearch(data.getData(), norms, numFeatures, method == LSH_COSINE,
+					lshTables, lshBits, reRank, new Random(lshSeed));
+		}else{
+			search = new BruteForceSearch(data.getData(), norms);
+		}
 	}
-
+	
 	@Override
 	public double classify(Example example) {
-		//PriorityQueue<Double> q = new PriorityQueue<Double>(k);
-		return getLabel(example)[0];
+		return labels.getLabel(getLabel(example, getScratch()));
 	}
 	
 	@Override
 	public double confidence(Example example) {
-		return getLabel(example)[0];
+		return classify(example);
 	}
 	
 	/**
-	 * Get the majority label for the k closest example 
-	 * AND the proportion of that label
+	 * Get the majority label (as a class id) of the k closest examples.  Ties
+	 * go to the label with the closest example.
 	 * 
 	 * @param example to classify
-	 * @return an array containing two elements, the first is the majority label
-	 *  and the second is the proportion of closest examples that were that label
+	 * @param scratch this thread's buffers
+	 * @return the class id of the majority label
+	 */
+	private int getLabel(Example example, Scratch scratch){
+		return vote(findNeighbors(example, scratch), scratch);
+	}
+	
+	/**
+	 * @param neighbors the neighbors of an example, sorted nearest first
+	 * @param scratch this thread's buffers
+	 * @return the class id of the majority label of neighbors
+	 */
+	private int vote(TopKHeap neighbors, Scratch scratch){
+		for( int i = 0; i < neighbors.size(); i++ ){
+			scratch.ids[i] = neighbors.getId(i);
+		}
+		
+		return vote(scratch.ids, neighbors.size(), scratch.classCounts);
+	}
+	
+	/**
+	 * @param neighbors the positions of the neighbors of an example in the training data, nearest first
+	 * @param size the number of neighbors to use
+	 * @param counts a buffer for counting the votes for each class, all 0
+	 * @return the class id of the majority label of the neighbors
+	 */
+	private int vote(int[] neighbors, int size, int[] counts){
+		int maxCount = 0;
+		
+		for( int i = 0; i < size; i++ ){
+			int c = classIds[neighbors[i]];
+			counts[c]++;
+			maxCount = Math.max(maxCount, counts[c]);
+		}
+		
+		// the first class to reach the maximum count, walking from the closest example
+		int best = -1;
+		
+		for( int i = 0; i < size; i++ ){
+			int c = classIds[neighbors[i]];
+			
+			if( best == -1 && counts[c] == maxCount ){
+				best = c;
+			}
+			
+			counts[c] = 0;
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Classify all of the examples in a data set, using all of the processors
+	 * 
+	 * @param data
+	 * @return the predicted label of each example, in order
+	 */
+	public double[] classifyAll(DataSet data){
+		return classifyAll(data, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Classify all of the examples in a data set.  This gives the same labels as classify,
+	 * but with brute force search (the default) it finds the neighbors of a block of examples
+	 * at a time: the block's examples are scattered into a dense matrix, feature by feature,
+	 * and each training example's dot products with all of them are computed in one pass over
+	 * its non-zero features.  So the training data is read from memory once per block rather
+	 * than once per example.  The blocks are split between numThreads threads.
+	 * 
+	 * @param data
+	 * @param numThreads
+	 * @return the predicted label of each example, in order
+	 */
+	public double[] classifyAll(DataSet data, int numThreads){
+		final List<Example> examples = data.getData();
+		final double[] predictions = new double[examples.size()];
+		
+		runInBlocks(examples.size(), numThreads, new BlockTask(){
+			public void run(int begin, int end){
+				Scratch scratch = getScratch();
+				
+				if( !(search instanceof BruteForceSearch) ){
+					// the other searches skip most of the training data anyway
+					for( int i = begin; i < end; i++ ){
+						predictions[i] = labels.getLabel(getLabel(examples.get(i), scratch));
+					}
+					
+					return;
+				}
+				
+				Block block = new Block(numFeatures, getBlockSize(), k);
+				
+				for( int first = begin; first < end; first += block.neighbors.length ){
+					int size = Math.min(block.neighbors.length, end-first);
+					searchBlock(examples, first, size, block, null);
+					
+					for( int j = 0; j < size; j++ ){
+						predictions[first+j] = labels.getLabel(vote(block.neighbors[j], scratch));
+					}
+				}
+			}
+		});
+		
+		return predictions;
+	}
+	
+	/**
+	 * Find the nearest neighbors of each training example among the other training
+	 * examples that aren't in the same group, using all of the processors.  This is the
+	 * same as training on only the examples outside the group (with the examples in the
+	 * same order) and finding the neighbors, but for all of the groups at once.  For
+	 * example, with the groups being the splits of a cross validation, the first k
+	 * neighbors of each example are the ones it would get in its split for any k up
+	 * to maxK (see CrossValidator.runKNN).
+	 * 
+	 * The neighbors are found exactly, by euclidean distance, so with LSH_EUCLIDEAN they can
+	 * be better than the ones classify finds.  The cosine similarity search methods
+	 * (INVERTED_INDEX and LSH_COSINE) aren't supported.
+	 * 
+	 * @param groups the group of each training example, or null to just leave each
+	 * example out of its own neighbors
+	 * @param maxK the number of neighbors to find
+	 * @return the positions in the training data of the maxK (or all, if fewer) nearest
+	 * neighbors of each training example, nearest first
+	 */
+	public int[][] getNeighborLists(int[] groups, int maxK){
+		return getNeighborLists(groups, maxK, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Find the nearest neighbors of each training example among the other training
+	 * examples that aren't in the same group, see above
+	 * 
+	 * @param groups the group of each training example, or null to just leave each
+	 * example out of its own neighbors
+	 * @param maxK the number of neighbors to find
+	 * @param numThreads
+	 * @return the positions in the training data of the maxK (or all, if fewer) nearest
+	 * neighbors of each training example, nearest first
+	 */
+	public int[][] getNeighborLists(int[] groups, final int maxK, int numThreads){
+		if( searchMethod == INVERTED_INDEX || searchMethod == LSH_COSINE ){
+			throw new RuntimeException("Neighbor lists are only found by euclidean distance, not with search method " + searchMethod);
+		}
+		
+		final List<Example> examples = train.getData();
+		final int[][] neighborLists = new int[examples.size()][];
+		
+		if( groups == null ){
+			groups = new int[examples.size()];
+			
+			for( int i = 0; i < groups.length; i++ ){
+				groups[i] = i;
+			}
+		}
+		
+		final int[] exampleGroups = groups;
+		
+		runInBlocks(examples.size(), numThreads, new BlockTask(){
+			public void run(int begin, int end){
+				Block block = new Block(numFeatures, getBlockSize(), maxK);
+				
+				for( int first = begin; first < end; first += block.neighbors.length ){
+					int size = Math.min(block.neighbors.length, end-first);
+					searchBlock(examples, first, size, block, exampleGroups);
+					
+					for( int j = 0; j < size; j++ ){
+						TopKHeap neighbors = block.neighbors[j];
+						neighborLists[first+j] = new int[neighbors.size()];
+						
+						for( int i = 0; i < neighbors.size(); i++ ){
+							neighborLists[first+j][i] = neighbors.getId(i);
+						}
+					}
+				}
+			}
+		});
+		
+		return neighborLists;
+	}
+	
+	/**
+	 * Get the majority label of the first k of a list of neighbors (e.g. from getNeighborLists).
+	 * Ties go to the label with the closest example, as with classify.
+	 * 
+	 * @param neighbors positions in the training data, nearest first
+	 * @param k the number of neighbors to use
+	 * @return the majority label
+	 */
+	public double getMajorityLabel(int[] neighbors, int k){
+		return labels.getLabel(vote(neighbors, Math.min(k, neighbors.length), getScratch().classCounts));
+	}
+	
+	/**
+	 * @return the number of queries to search for at a time with searchBlock
+	 */
+	private int getBlockSize(){
+		return Math.max(1, Math.min(MAX_QUERY_BLOCK, MAX_BLOCK_DOUBLES/Math.max(numFeatures, 1)));
+	}
+	
+	/**
+	 * Split numQueries queries into contiguous chunks of whole blocks (see getBlockSize)
+	 * and run task on each, with numThreads threads: this one and the rest from the
+	 * common fork-join pool, so no threads are started for each call
+	 * 
+	 * @param numQueries
+	 * @param numThreads
+	 * @param task
+	 */
+	private void runInBlocks(int numQueries, int numThreads, final BlockTask task){
+		int blockSize = getBlockSize();
+		int numBlocks = (numQueries + blockSize - 1)/blockSize;
+		int numChunks = Math.max(1, Math.min(numThreads, numBlocks));
+		ArrayList<ForkJoinTask<?>> chunks = new ArrayList<ForkJoinTask<?>>();
+		
+		for( int i = 1; i < numChunks; i++ ){
+			final int begin = (int)((long)numBlocks*i/numChunks)*blockSize;
+			final int end = Math.min(numQueries, (int)((long)numBlocks*(i+1)/numChunks)*blockSize);
+			
+			chunks.add(ForkJoinPool.commonPool().submit(new Runnable(){
+				public void run(){
+					task.run(begin, end);
+				}
+			}));
+		}
+		
+		task.run(0, Math.min(numQueries, (int)((long)numBlocks/numChunks)*blockSize));
+		
+		// join (rather than get) lets a fork-join thread waiting here run other tasks,
+		// and rethrows a chunk's exception as is
+		for( ForkJoinTask<?> chunk: chunks ){
+			chunk.join();
+		}
+	}
+	
+	/**
+	 * Find the nearest training examples to a block of queries by brute force: the queries
+	 * are scattered into a dense matrix, feature by feature, and each training example's dot
+	 * products with all of them are computed in one pass over its non-zero features.  The
+	 * distances are added up in the same order as getSquaredDistance, so they're the same.
+	 * 
+	 * Only the queries are blocked: the block's matrix is what stays in cache, and the
+	 * training data is streamed through once per block in order.
+	 * 
+	 * @param queries
+	 * @param first the position in queries of the first query in the block
+	 * @param size the number of queries in the block
+	 * @param block the buffers, whose heaps are left holding each query's neighbors, nearest first
+	 * @param groups if not null, the queries are the training examples and training examples
+	 * in the same group as a query (groups holds the group of each) are skipped for it
 	 */
-	private double[] getLabel(Example example){
-		ArrayList<ScoredExample> distances = new ArrayList<ScoredExample>();
+	private void searchBlock(List<Example> queries, int first, int size, Block block, int[] groups){
+		List<Example> trainData = train.getData();
+		int blockSize = block.neighbors.length;
+		double[] matrix = block.matrix;
+		double[] dots = block.dots;
 		
-		for( Example e: train.getData() ){
-			distances.add(new ScoredExample(e, getDistance(example, e)));
+		for( int j = 0; j < size; j++ ){
+			Example example = queries.get(first+j);
+			block.queryNorms[j] = getSquaredNorm(example);
+			block.neighbors[j].clear();
+			
+			for( int n = 0; n < example.getNumNonZero() && example.getIndexAt(n) < numFeatures; n++ ){
+				matrix[example.getIndexAt(n)*blockSize + j] = example.getValueAt(n);
+			}
 		}
 		
-		Collections.sort(distances);
+		for( int i = 0; i < norms.length; i++ ){
+			Example e = trainData.get(i);
+			Arrays.fill(dots, 0, size, 0.0);
+			
+			for( int n = 0; n < e.getNumNonZero(); n++ ){
+				double value = e.getValueAt(n);
+				int base = e.getIndexAt(n)*blockSize;
+				
+				for( int j = 0; j < size; j++ ){
+					dots[j] += matrix[base + j]*value;
+				}
+			}
+			
+			for( int j = 0; j < size; j++ ){
+				if( groups != null && groups[i] == groups[first+j] ){
+					continue;
+				}
+				
+				double distance = Math.max(block.queryNorms[j] + norms[i] - 2*dots[j], 0.0);
+				
+				if( distance <= block.neighbors[j].getBound() ){
+					block.neighbors[j].offer(distance, i);
+				}
+			}
+		}
 		
-		HashMapCounter<Double> counter = new HashMapCounter<Double>();
+		for( int j = 0; j < size; j++ ){
+			Example example = queries.get(first+j);
+			block.neighbors[j].sort();
+			
+			for( int n = 0; n < example.getNumNonZero() && example.getIndexAt(n) < numFeatures; n++ ){
+				matrix[example.getIndexAt(n)*blockSize + j] = 0.0;
+			}
+		}
+	}
+	
+	/**
+	 * Get the k nearest training examples to an example
+	 * 
+	 * @param example
+	 * @return the positions of the neighbors in the training data, nearest first
+	 */
+	public int[] getNeighbors(Example example){
+		TopKHeap neighbors = findNeighbors(example, getScratch());
+		int[] ids = new int[neighbors.size()];
 		
-		for( int i = 0; i < k; i++ ){
-			counter.increment(distances.get(i).e.getLabel());
+		for( int i = 0; i < ids.length; i++ ){
+			ids[i] = neighbors.getId(i);
 		}
 		
-		double maxCount = -1;
-		double maxPrediction = 0.0;
+		return ids;
+	}
+	
+	/**
+	 * @param example
+	 * @param scratch this thread's buffers
+	 * @return scratch's heap holding the k nearest training examples, sorted nearest first
+	 */
+	private TopKHeap findNeighbors(Example example, Scratch scratch){
+		TopKHeap neighbors = scratch.neighbors;
+		neighbors.clear();
+		
+		double[] query = scatter(example, scratch);
+		search.search(example, query, getSquaredNorm(example), neighbors);
+		unscatter(example, query);
+		neighbors.sort();
 		
-		for( Double d: counter.keySet() ){
-			int count = counter.get(d);
+		return neighbors;
+	}
+	
+	/**
+	 * @return this thread's buffers, sized for the current k and training data
+	 */
+	private Scratch getScratch(){
+		Scratch s = scratch.get();
+		
+		if( s == null || s.neighbors.getK() != k || s.query.length < numFeatures || s.classCounts.length < labels.getNumClasses() ){
+			s = new Scratch(k, numFeatures, labels.getNumClasses());
+			scratch.set(s);
+		}
+		
+		return s;
+	}
+	
+	/**
+	 * Get the squared euclidean distance between the query and a training example as
+	 * |query|^2 + |e|^2 - 2 query.e, which only has to look at the non-zero features of e
+	 * rather than at the features of both examples.  Since the distances are only compared,
+	 * the square root isn't needed.
+	 * 
+	 * @param query the query example scattered into a dense array (see scatter)
+	 * @param queryNorm the squared length of the query example
+	 * @param e the training example
+	 * @param norm the squared length of e
+	 * @return the squared distance between the two examples
+	 */
+	static double getSquaredDistance(double[] query, double queryNorm, Example e, double norm){
+		double dot = 0.0;
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			int featureIndex = e.getIndexAt(i);
 			
-			if( count > maxCount ){
-				maxCount = count;
-				maxPrediction = d;
+			// the query has no features past the end of the array
+			if( featureIndex >= query.length ){
+				break;
 			}
+			
+			dot += query[featureIndex]*e.getValueAt(i);
 		}
 		
-		double[] temp = new double[2];
-		temp[0] = maxPrediction;
-		temp[1] = maxCount/(double)k;
-		return temp;
+		// rounding can take the distance between (nearly) identical examples below 0
+		return Math.max(queryNorm + norm - 2*dot, 0.0);
 	}
 	
 	/**
-	 * @param e1
-	 * @param e2
-	 * @return the distance between the two examples
+	 * @param e
+	 * @return the squared length of e
 	 */
-	private double getDistance(Example e1, Example e2){
-		double dist = 0.0;
+	private static double getSquaredNorm(Example e){
+		double norm = 0.0;
 		
-		for( Integer featureNum: train.getAllFeatureIndices() ){
-			double diff = e1.getFeature(featureNum) - e2.getFeature(featureNum);
-			dist += diff*diff;
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			norm += e.getValueAt(i)*e.getValueAt(i);
+		}
+		
+		return norm;
+	}
+	
+	/**
+	 * Copy the features of example into this thread's dense query array.  Only features
+	 * that the training data has are copied, the rest can't contribute to a dot product.
+	 * 
+	 * @param example
+	 * @return the query array, which should be cleared with unscatter when done
+	 */
+	private double[] scatter(Example example, Scratch scratch){
+		double[] query = scratch.query;
+		
+		for( int i = 0; i < example.getNumNonZero(); i++ ){
+			int featureIndex = example.getIndexAt(i);
+			
+			if( featureIndex >= query.length ){
+				break;
+			}
+			
+			query[featureIndex] = example.getValueAt(i);
 		}
 		
-		return Math.sqrt(dist);
+		return query;
+	}
+	
+	/**
+	 * Set the entries of query that scatter filled in for example back to 0
+	 * 
+	 * @param example
+	 * @param query
+	 */
+	private static void unscatter(Example example, double[] query){
+		for( int i = 0; i < example.getNumNonZero(); i++ ){
+			int featureIndex = example.getIndexAt(i);
+			
+			if( featureIndex >= query.length ){
+				break;
+			}
+			
+			query[featureIndex] = 0.0;
+		}
+	}
+	
+	/**
+	 * Set how the nearest neighbors are found, using the class constants.  BRUTE_FORCE
+	 * (the default) checks every training example.  The trees (KD_TREE, BALL_TREE or
+	 * SPATIAL_TREE to pick one based on the number of features) are built by train and
+	 * find the same neighbors while skipping most of the training data, which pays off
+	 * for dense data with few features.
+	 * 
+	 * INVERTED_INDEX is for sparse data like text: the neighbors are the training examples
+	 * with the largest cosine similarity rather than the smallest distance, found through
+	 * an inverted index so only the training examples that share features with the example
+	 * are looked at.  It needs non-negative feature values.
+	 * 
+	 * LSH_EUCLIDEAN and LSH_COSINE find approximate neighbors (by euclidean distance or cosine
+	 * similarity) with locality-sensitive hash tables built by train, which only look at the
+	 * training examples that hash to the same bucket as the example in some table.  They
+	 * trade some of the true neighbors for speed on large data sets (see setLSHParameters).
+	 * 
+	 * @param searchMethod
+	 */
+	public void setSearchMethod(int searchMethod){
+		this.searchMethod = searchMethod;
+	}
+	
+	/**
+	 * Set the parameters for LSH_EUCLIDEAN and LSH_COSINE (the defaults are 20 tables
+	 * with 8 bits and re-ranking).  More bits make the search faster but miss more of
+	 * the true neighbors, more tables find more of them but make it slower.
+	 * 
+	 * @param numTables the number of hash tables
+	 * @param numBits the number of random projections hashed for each table
+	 * @param reRank whether to rank the examples found by their exact distance, rather than
+	 * by the number of tables they hash to the same bucket as the example in
+	 */
+	public void setLSHParameters(int numTables, int numBits, boolean reRank){
+		this.lshTables = numTables;
+		this.lshBits = numBits;
+		this.reRank = reRank;
+	}
+	
+	/**
+	 * Set the parameters for LSH_EUCLIDEAN and LSH_COSINE, see above, and the random
+	 * seed the projections are picked with (0 by default), so that models trained on
+	 * the same data can use independent hash tables
+	 * 
+	 * @param numTables the number of hash tables
+	 * @param numBits the number of random projections hashed for each table
+	 * @param reRank whether to rank the examples found by their exact distance
+	 * @param seed the random seed for the projections
+	 */
+	public void setLSHParameters(int numTables, int numBits, boolean reRank, long seed){
+		setLSHParameters(numTables, numBits, reRank);
+		setSeed(seed);
+	}
+	
+	/**
+	 * Set the random seed the LSH projections are picked with (0 by default), the
+	 * other search methods aren't random
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed){
+		this.lshSeed = seed;
 	}
 	
 	/**
 	 * Set k for k-NN
 	 * 
-	 * @param k
+	 * @param k at least 1
 	 */
 	public void setK(int k){
+		if( k < 1 ){
+			throw new RuntimeException("k must be at least 1: " + k);
+		}
+		
 		this.k = k;
 	}
-
+	
 	/**
-	 * Comparable class for sorting examples in increasing order
+	 * The buffers a thread needs to classify an example
 	 */
-	private class ScoredExample implements Comparable<ScoredExample>{
-		public double distance;
-		public Example e;
+	private static class Scratch {
+		public TopKHeap neighbors;
+		public double[] query; // the query example scattered into a dense array
+		public int[] classCounts; // votes for each class, all 0 between queries
+		public int[] ids; // the neighbors' positions, for voting
 		
-		public ScoredExample(Example e, double distance){
-			this.e = e;
-			this.distance = distance;
+		public Scratch(int k, int numFeatures, int numClasses){
+			neighbors = new TopKHeap(k);
+			ids = new int[k];
+			query = new double[numFeatures];
+			classCounts = new int[numClasses];
 		}
-
-		@Override
-		public int compareTo(ScoredExample o) {
-			// we want smallest first (i.e. closest distances)
-			return Double.compare(distance, o.distance);
+	}
+	
+	/**
+	 * The buffers for searching for the neighbors of a block of queries (see searchBlock)
+	 */
+	private static class Block {
+		public double[] matrix; // feature f of the block's j-th query is matrix[f*blockSize + j]
+		public double[] queryNorms;
+		public double[] dots;
+		public TopKHeap[] neighbors;
+		
+		public Block(int numFeatures, int blockSize, int k){
+			matrix = new double[numFeatures*blockSize];
+			queryNorms = new double[blockSize];
+			dots = new double[blockSize];
+			neighbors = new TopKHeap[blockSize];
+			
+			for( int j = 0; j < blockSize; j++ ){
+				neighbors[j] = new TopKHeap(k);
+			}
 		}
 	}
+	
+	/**
+	 * Work on a contiguous chunk of queries (see runInBlocks)
+	 */
+	private interface BlockTask {
+		public void run(int begin, int end);
+	}
 }
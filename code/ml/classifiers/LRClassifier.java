@@ -1,13 +1,13 @@
 package ml.classifiers;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Random;
 
 import ml.data.DataSet;
 import ml.data.Example;
+import ml.data.ExampleSource;
+import ml.data.ShuffleBuffer;
 
 /**
  * Logistic Regression classifier
@@ -15,37 +15,33 @@ import ml.data.Example;
  * @author Pavel Filippov and Tommy Liu
  *
  */
-public class LRClassifier implements Classifier {
-	protected HashMap<Integer, Double> weights; // the feature weights
+public class LRClassifier implements StreamingClassifier, SeedableClassifier {
+	protected double[] weights; // the feature weights, indexed by feature index
 	protected double b = 0; // the intersect weight
 	protected double alpha = 0.01; // learning rate
 	protected int iterations = 10;
+	protected int shuffleBufferSize = 10000; // examples held at once when training from an ExampleSource
+	protected Random rand = new Random(); // for shuffling the examples when training from an ExampleSource
 	
 
 	/**
 	 * Get a weight vector over the set of features with each weight
 	 * set to 0
 	 * 
-	 * @param features the set of features to learn over
+	 * @param numFeatures the number of features to learn over
 	 * @return
 	 */
-	protected HashMap<Integer, Double> getZeroWeights(Set<Integer> features){
-		HashMap<Integer, Double> temp = new HashMap<Integer, Double>();
-		
-		for( Integer f: features){
-			temp.put(f, 0.0);
-		}
-		
-		return temp;
+	protected double[] getZeroWeights(int numFeatures){
+		return new double[numFeatures];
 	}
 	
 	/**
 	 * Initialize the weights and the intersect value
 	 * 
-	 * @param features
+	 * @param numFeatures
 	 */
-	protected void initializeWeights(Set<Integer> features){
-		weights = getZeroWeights(features);
+	protected void initializeWeights(int numFeatures){
+		weights = getZeroWeights(numFeatures);
 		b = 0;
 	}
 
@@ -57,12 +53,37 @@ public class LRClassifier implements Classifier {
 	public void setIterations(int iterations){
 		this.iterations = iterations;
 	}
+	
+	/**
+	 * Set how many examples are held in memory at once to shuffle them when
+	 * training from an ExampleSource (see ShuffleBuffer)
+	 * 
+	 * @param shuffleBufferSize
+	 */
+	public void setShuffleBufferSize(int shuffleBufferSize){
+		this.shuffleBufferSize = shuffleBufferSize;
+	}
+	
+	/**
+	 * Set the random seed used to shuffle the examples, so training is repeatable
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed){
+		rand = new Random(seed);
+	}
 
-	public double dotProduct(Example example, HashMap<Integer, Double> weights){
+	public double dotProduct(Example example, double[] weights){
 
 		double dotProduct = 0.0;
-		for (Integer feature : weights.keySet()){
-			dotProduct += weights.get(feature) * example.getFeature(feature);
+		// only the non-zero features contribute
+		for (int i = 0; i < example.getNumNonZero(); i++){
+			int featureIndex = example.getIndexAt(i);
+			// the weights stop at the largest feature seen in training, the rest have no weight
+			if (featureIndex >= weights.length){
+				break;
+			}
+			dotProduct += weights[featureIndex] * example.getValueAt(i);
 		}
 		dotProduct += b;
 
@@ -75,33 +96,58 @@ public class LRClassifier implements Classifier {
 	}
 	
 	public void train(DataSet data) {
-		initializeWeights(data.getAllFeatureIndices());
+		initializeWeights(data.getNumFeatures());
 		
 		for (int iter = 0; iter < iterations; iter++){
 			int exampleCount = 0;
 			for (Example example : data.getData()){
 				// System.out.println("Example" + exampleCount++);
+				trainExample(example);
+			}
+		}
+	}
 
-				double prediction = getPrediction(example);
-				// System.out.println("Prediction: " + prediction);
+	public void train(ExampleSource source) {
+		initializeWeights(0);
 
-				double label = example.getLabel();
-				double diff = prediction - label;
-				// System.out.println("diff: " + diff);
+		for (int iter = 0; iter < iterations; iter++){
+			Iterator<Example> training = new ShuffleBuffer(source.open(), shuffleBufferSize, rand);
 
-				for (Integer feature : weights.keySet()){
-					double oldWeight = weights.get(feature);
-					double featureValue = example.getFeature(feature);
-					double newWeight = oldWeight - alpha * diff * featureValue;
-					// System.out.println("Feature " + feature + " old weight: " + oldWeight + " new weight: " + newWeight);
-					weights.put(feature, newWeight);
+			while (training.hasNext()){
+				Example example = training.next();
+
+				// the number of features isn't known up front, so grow the weights as needed
+				int numNonZero = example.getNumNonZero();
+				if (numNonZero > 0 && example.getIndexAt(numNonZero-1) >= weights.length){
+					weights = Arrays.copyOf(weights, Math.max(example.getIndexAt(numNonZero-1)+1, 2*weights.length));
 				}
-				b = b - alpha * diff;
-				// System.out.println("New b: " + b);
+
+				trainExample(example);
 			}
 		}
 	}
 
+	/**
+	 * Take a gradient step on a single training example
+	 * 
+	 * @param example
+	 */
+	protected void trainExample(Example example){
+		double prediction = getPrediction(example);
+		// System.out.println("Prediction: " + prediction);
+
+		double label = example.getLabel();
+		double diff = prediction - label;
+		// System.out.println("diff: " + diff);
+
+		// features with a zero value have a zero gradient, so only the non-zero weights change
+		for (int i = 0; i < example.getNumNonZero(); i++){
+			weights[example.getIndexAt(i)] -= alpha * diff * example.getValueAt(i);
+		}
+		b = b - alpha * diff;
+		// System.out.println("New b: " + b);
+	}
+
 	@Override
 	public double classify(Example example) {
 		if (getPrediction(example) >= 0.5){
@@ -0,0 +1,400 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import ml.data.Example;
+import ml.utils.TopKHeap;
+
+/**
+ * Finds approximate nearest neighbors with locality-sensitive hashing: each training
+ * example is put in a bucket in each of a number of hash tables, with hash functions
+ * that tend to give nearby examples the same bucket, and only the training examples
+ * that share a bucket with the query in at least one table are looked at.
+ * 
+ * A table's hash is numBits random projections of the example (dot products with
+ * random gaussian vectors):
+ * 
+ * - for cosine similarity, the signs of the projections (random hyperplanes, the
+ *   "SimHash"), since two examples fall on the same side of a random hyperplane with
+ *   probability 1 - angle/pi.
+ * - for euclidean distance, the projections plus a random offset, divided into buckets
+ *   of a fixed width (p-stable hashing), since the difference between two examples'
+ *   projections is gaussian with a standard deviation of their distance.
+ * 
+ * More bits make the buckets smaller (faster, but fewer of the true neighbors share
+ * one with the query) and more tables give the true neighbors more chances to.
+ * 
+ * The candidates are either re-ranked by their exact distance (or -similarity), or
+ * ranked by their hashes: for cosine similarity by the number of bits (over all of the
+ * tables) that differ from the query's, which estimates the angle between them, and
+ * for euclidean distance by the number of tables they share a bucket with the query
+ * in.  If there are fewer than k candidates, all of the training examples are checked
+ * instead.
+ */
+class LSHSearch implements NeighborSearch {
+	// the examples to find the distance to the nearest neighbor of when picking a bucket width
+	private static final int WIDTH_SAMPLE_SIZE = 1000;
+	
+	// the values of the projection vectors are picked from these gaussians (see project),
+	// a hash picks PICKS_PER_HASH of them at a time with TABLE_BITS bits each
+	private static final int TABLE_BITS = 12;
+	private static final int PICKS_PER_HASH = 64/TABLE_BITS;
+	private static final double[] GAUSSIANS = new double[1 << TABLE_BITS];
+	
+	static {
+		Random rand = new Random(0);
+		
+		for( int i = 0; i < GAUSSIANS.length; i++ ){
+			GAUSSIANS[i] = rand.nextGaussian();
+		}
+	}
+	
+	private List<Example> examples;
+	private double[] norms;
+	private int numFeatures;
+	
+	private boolean cosine;
+	private int numTables;
+	private int numBits;
+	private boolean reRank;
+	
+	// projection p of feature f is picked by hashing f and p with this seed (see
+	// project), so the projections don't take any memory however many features
+	// there are, and an example's projections only need its non-zero features
+	private long seed;
+	private int numProjections;
+	private double[] offsets; // euclidean only, between 0 and width
+	private double width; // euclidean only, the bucket width
+	
+	// the keys of table t's buckets, in increasing order, with bucket b holding the
+	// examples bucketIds[t][bucketStarts[t][b]] to bucketIds[t][bucketStarts[t][b+1]-1]
+	private long[][] bucketKeys;
+	private int[][] bucketStarts;
+	private int[][] bucketIds;
+	private long[][] exampleKeys; // the key of each example in each table
+	
+	// buffers for a query, one set per thread
+	private ThreadLocal<Candidates> candidates = new ThreadLocal<Candidates>();
+	
+	/**
+	 * @param examples the training examples
+	 * @param norms the squared length of each training example
+	 * @param numFeatures the number of features
+	 * @param cosine whether to find the neighbors by cosine similarity rather than euclidean distance
+	 * @param numTables the number of hash tables
+	 * @param numBits the number of projections hashed for each table (at most 64 for cosine)
+	 * @param reRank whether to rank the candidates by their exact distance
+	 * @param rand for picking the projections
+	 */
+	public LSHSearch(List<Example> examples, double[] norms, int numFeatures, boolean cosine,
+			int numTables, int numBits, boolean reRank, Random rand){
+		if( numTables < 1 || numBits < 1 || (cosine && numBits > 64) ){
+			throw new RuntimeException("Bad LSH parameters: " + numTables + " tables with " + numBits + " bits");
+		}
+		
+		this.examples = examples;
+		this.norms = norms;
+		this.numFeatures = numFeatures;
+		this.cosine = cosine;
+		this.numTables = numTables;
+		this.numBits = numBits;
+		this.reRank = reRank;
+		
+		numProjections = numTables*numBits;
+		seed = rand.nextLong();
+		
+		if( !cosine ){
+			width = pickWidth(rand);
+			offsets = new double[numProjections];
+			
+			for( int p = 0; p < numProjections; p++ ){
+				offsets[p] = rand.nextDouble()*width;
+			}
+		}
+		
+		buildTables();
+	}
+	
+	private void buildTables(){
+		int n = examples.size();
+		long[][] keys = new long[numTables][n];
+		exampleKeys = keys;
+		double[] projected = new double[numProjections];
+		
+		for( int id = 0; id < n; id++ ){
+			project(examples.get(id), projected);
+			
+			for( int t = 0; t < numTables; t++ ){
+				keys[t][id] = getKey(projected, t);
+			}
+		}
+		
+		bucketKeys = new long[numTables][];
+		bucketStarts = new int[numTables][];
+		bucketIds = new int[numTables][];
+		
+		for( int t = 0; t < numTables; t++ ){
+			// the distinct keys, in order
+			long[] sorted = keys[t].clone();
+			Arrays.sort(sorted);
+			int numBuckets = 0;
+			
+			for( int i = 0; i < n; i++ ){
+				if( i == 0 || sorted[i] != sorted[i-1] ){
+					sorted[numBuckets++] = sorted[i];
+				}
+			}
+			
+			bucketKeys[t] = Arrays.copyOf(sorted, numBuckets);
+			
+			// count the examples in each bucket, then fill them in in order
+			int[] starts = new int[numBuckets+1];
+			int[] buckets = new int[n];
+			
+			for( int id = 0; id < n; id++ ){
+				buckets[id] = Arrays.binarySearch(bucketKeys[t], keys[t][id]);
+				starts[buckets[id]+1]++;
+			}
+			
+			for( int b = 0; b < numBuckets; b++ ){
+				starts[b+1] += starts[b];
+			}
+			
+			int[] ids = new int[n];
+			int[] next = Arrays.copyOf(starts, numBuckets);
+			
+			for( int id = 0; id < n; id++ ){
+				ids[next[buckets[id]]++] = id;
+			}
+			
+			bucketStarts[t] = starts;
+			bucketIds[t] = ids;
+		}
+	}
+	
+	public void search(Example example, double[] query, double queryNorm, TopKHeap neighbors){
+		Candidates c = getCandidates();
+		int[] counts = c.counts;
+		int numCandidates = 0;
+		
+		// the training examples in the query's buckets, with the number of tables they share one in
+		project(example, c.projected);
+		
+		for( int t = 0; t < numTables; t++ ){
+			c.keys[t] = getKey(c.projected, t);
+			int b = Arrays.binarySearch(bucketKeys[t], c.keys[t]);
+			
+			if( b >= 0 ){
+				int[] ids = bucketIds[t];
+				
+				for( int i = bucketStarts[t][b]; i < bucketStarts[t][b+1]; i++ ){
+					if( counts[ids[i]]++ == 0 ){
+						c.ids[numCandidates++] = ids[i];
+					}
+				}
+			}
+		}
+		
+		boolean enough = numCandidates >= neighbors.getK();
+		
+		for( int i = 0; i < numCandidates; i++ ){
+			int id = c.ids[i];
+			
+			if( enough ){
+				neighbors.offer(reRank ? getDistance(query, queryNorm, id) : getHashDistance(c, id), id);
+			}
+			
+			counts[id] = 0;
+		}
+		
+		if( !enough ){
+			for( int id = 0; id < examples.size(); id++ ){
+				neighbors.offer(getDistance(query, queryNorm, id), id);
+			}
+		}
+	}
+	
+	/**
+	 * @return the squared euclidean distance (or -cosine similarity) between
+	 * the query and training example id
+	 */
+	private double getDistance(double[] query, double queryNorm, int id){
+		Example e = examples.get(id);
+		
+		if( !cosine ){
+			return KNNClassifier.getSquaredDistance(query, queryNorm, e, norms[id]);
+		}
+		
+		if( queryNorm == 0 || norms[id] == 0 ){
+			return 0.0;
+		}
+		
+		double dot = 0.0;
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			int featureIndex = e.getIndexAt(i);
+			
+			if( featureIndex >= query.length ){
+				break;
+			}
+			
+			dot += query[featureIndex]*e.getValueAt(i);
+		}
+		
+		return -dot/Math.sqrt(queryNorm*norms[id]);
+	}
+	
+	/**
+	 * @return how far training example id is from the query by their hashes: the number of
+	 * differing bits for cosine, minus the number of tables they share a bucket in for euclidean
+	 */
+	private double getHashDistance(Candidates c, int id){
+		if( !cosine ){
+			return -c.counts[id];
+		}
+		
+		int bits = 0;
+		
+		for( int t = 0; t < numTables; t++ ){
+			bits += Long.bitCount(c.keys[t] ^ exampleKeys[t][id]);
+		}
+		
+		return bits;
+	}
+	
+	/**
+	 * Calculate all of the projections of an example.  The projection vectors' values
+	 * for a feature are picked from GAUSSIANS by a hash of the seed, the feature and
+	 * the projection, rather than stored, so they're the same every time.
+	 * 
+	 * @param e
+	 * @param projected where to put them
+	 */
+	private void project(Example e, double[] projected){
+		Arrays.fill(projected, 0.0);
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			int featureIndex = e.getIndexAt(i);
+			
+			if( featureIndex >= numFeatures ){
+				break;
+			}
+			
+			double value = e.getValueAt(i);
+			long base = seed + featureIndex*0x9E3779B97F4A7C15L;
+			
+			for( int p = 0; p < numProjections; p += PICKS_PER_HASH ){
+				long h = hash(base + p);
+				int end = Math.min(p + PICKS_PER_HASH, numProjections);
+				
+				for( int q = p; q < end; q++ ){
+					projected[q] += value*GAUSSIANS[(int)h & (GAUSSIANS.length-1)];
+					h >>>= TABLE_BITS;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return a well mixed hash of key (the splitmix64 finalizer)
+	 */
+	private static long hash(long key){
+		key = (key ^ (key >>> 30))*0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27))*0x94D049BB133111EBL;
+		return key ^ (key >>> 31);
+	}
+	
+	/**
+	 * @param projected an example's projections
+	 * @param table
+	 * @return the example's key in table
+	 */
+	private long getKey(double[] projected, int table){
+		long key = 0;
+		
+		for( int p = table*numBits; p < (table+1)*numBits; p++ ){
+			if( cosine ){
+				key = (key << 1) | (projected[p] > 0 ? 1 : 0);
+			}else{
+				// mix the bucket numbers together, different ones colliding just adds candidates
+				key = key*0x9E3779B97F4A7C15L + (long)Math.floor((projected[p] + offsets[p])/width);
+			}
+		}
+		
+		return key;
+	}
+	
+	/**
+	 * Pick the bucket width for euclidean hashing: 4 times the average distance to the nearest
+	 * neighbor over a sample of the training examples, so a projection of an example and its
+	 * nearest neighbor usually fall in the same bucket (about 90% of the time)
+	 */
+	private double pickWidth(Random rand){
+		int n = examples.size();
+		int[] sample = new int[Math.min(n, WIDTH_SAMPLE_SIZE)];
+		
+		for( int i = 0; i < sample.length; i++ ){
+			sample[i] = sample.length == n ? i : rand.nextInt(n);
+		}
+		
+		double[] query = new double[numFeatures];
+		double total = 0.0;
+		
+		for( int i = 0; i < sample.length; i++ ){
+			Example e = examples.get(sample[i]);
+			
+			for( int j = 0; j < e.getNumNonZero() && e.getIndexAt(j) < numFeatures; j++ ){
+				query[e.getIndexAt(j)] = e.getValueAt(j);
+			}
+			
+			double nearest = Double.POSITIVE_INFINITY;
+			
+			for( int j = 0; j < sample.length; j++ ){
+				if( j != i ){
+					nearest = Math.min(nearest, KNNClassifier.getSquaredDistance(query, norms[sample[i]], examples.get(sample[j]), norms[sample[j]]));
+				}
+			}
+			
+			for( int j = 0; j < e.getNumNonZero() && e.getIndexAt(j) < numFeatures; j++ ){
+				query[e.getIndexAt(j)] = 0.0;
+			}
+			
+			total += sample.length > 1 ? Math.sqrt(nearest) : 0.0;
+		}
+		
+		double width = 4*total/sample.length;
+		
+		// every example the same (or only one), any width will do
+		return width > 0 ? width : 1.0;
+	}
+	
+	private Candidates getCandidates(){
+		Candidates c = candidates.get();
+		
+		if( c == null ){
+			c = new Candidates(numTables, numProjections, examples.size());
+			candidates.set(c);
+		}
+		
+		return c;
+	}
+	
+	/**
+	 * A query's projections and keys and the training examples it shares buckets with
+	 */
+	private static class Candidates {
+		public double[] projected;
+		public long[] keys; // the query's key in each table
+		public int[] counts; // the number of tables each training example shares a bucket in, all 0 between queries
+		public int[] ids; // the training examples with a non-zero count
+		
+		public Candidates(int numTables, int numProjections, int numExamples){
+			projected = new double[numProjections];
+			keys = new long[numTables];
+			counts = new int[numExamples];
+			ids = new int[numExamples];
+		}
+	}
+}
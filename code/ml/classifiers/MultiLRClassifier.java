@@ -1,13 +1,15 @@
 package ml.classifiers;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 
 import ml.data.DataSet;
 import ml.data.Example;
+import ml.data.ExampleSource;
+import ml.data.LabelDictionary;
+import ml.data.ShuffleBuffer;
 
 /**
  * Multinomial Logistic Regression classifier (Softmax Regression)
@@ -17,13 +19,24 @@ import ml.data.Example;
  * 
  * We wrote the LR Classifier code by ourselves.
  */
-public class MultiLRClassifier implements Classifier {
+public class MultiLRClassifier implements StreamingClassifier, SeedableClassifier {
 
     protected double[][] W;          // W[class][feature]
+    protected float[][] Wf;          // W stored as floats, used instead of W if useFloatWeights is set
     protected double[] b;            // bias per class
     protected double alpha = 0.01;   // learning rate
     protected int iterations = 10;
+    protected int shuffleBufferSize = 10000; // examples held at once when training from an ExampleSource
+    protected Random rand = new Random(); // for shuffling the examples when training from an ExampleSource
 
+    private boolean useFloatWeights = false;
+
+    // the features of the example being trained on, copied out of it once per
+    // step instead of being read from the example again for every class
+    private int[] stepIndices = new int[0];
+    private double[] stepValues = new double[0];
+
+    private LabelDictionary classes; // maps the labels to the rows of W
     private int numClasses;
     private int numFeatures;
 
@@ -43,6 +56,30 @@ public class MultiLRClassifier implements Classifier {
 		this.alpha = alpha;
 	}
 
+    /**
+     * Store the weights as floats, which halves the memory for W (numClasses x numFeatures)
+     * and the memory traffic when scoring.  Dot products and probabilities are still
+     * computed in double precision, only the stored weights are rounded.
+     */
+    public void setFloatWeights(boolean useFloatWeights) {
+        this.useFloatWeights = useFloatWeights;
+    }
+
+    /**
+     * Set how many examples are held in memory at once to shuffle them when
+     * training from an ExampleSource (see ShuffleBuffer)
+     */
+    public void setShuffleBufferSize(int shuffleBufferSize) {
+        this.shuffleBufferSize = shuffleBufferSize;
+    }
+
+    /**
+     * Set the random seed used to shuffle the examples, so training is repeatable
+     */
+    public void setSeed(long seed) {
+        rand = new Random(seed);
+    }
+
     /** Softmax function */
     private double[] softmax(double[] z) {
         double max = z[0];
@@ -62,9 +99,29 @@ public class MultiLRClassifier implements Classifier {
 
     /** Dot product with class c */
     private double dot(Example e, int c) {
+        if (Wf != null) {
+            return dotFloat(e, c);
+        }
+
         double dp = b[c];
-        for (int f : e.getFeatureSet()) {
-            dp += W[c][f] * e.getFeature(f);
+        double[] w = W[c];
+        for (int i = 0; i < e.getNumNonZero(); i++) {
+            int featureIndex = e.getIndexAt(i);
+            // unseen features (past the end of w) have no weight
+            if (featureIndex >= w.length) break;
+            dp += w[featureIndex] * e.getValueAt(i);
+        }
+        return dp;
+    }
+
+    /** Dot product with class c using the float weights, summed in double precision */
+    private double dotFloat(Example e, int c) {
+        double dp = b[c];
+        float[] w = Wf[c];
+        for (int i = 0; i < e.getNumNonZero(); i++) {
+            int featureIndex = e.getIndexAt(i);
+            if (featureIndex >= w.length) break;
+            dp += w[featureIndex] * e.getValueAt(i);
         }
         return dp;
     }
@@ -82,7 +139,7 @@ public class MultiLRClassifier implements Classifier {
         for (int c = 1; c < numClasses; c++) {
             if (probs[c] > probs[best]) best = c;
         }
-        return best;
+        return classes.getLabel(best);
     }
 
     /** Confidence = probability of predicted class */
@@ -106,42 +163,143 @@ public class MultiLRClassifier implements Classifier {
     public void train(DataSet data) {
 
         // CLASS / FEATURE SETUP
-        numClasses = data.getLabels().size();
-        numFeatures = data.getAllFeatureIndices().size();
+        classes = data.getLabelDictionary();
+        numClasses = classes.getNumClasses();
+        numFeatures = data.getNumFeatures();
 
-        W = new double[numClasses][numFeatures];
+        if (useFloatWeights) {
+            Wf = new float[numClasses][numFeatures];
+            W = null;
+        } else {
+            W = new double[numClasses][numFeatures];
+            Wf = null;
+        }
         b = new double[numClasses];
 
         // TRAINING LOOP
         for (int iter = 0; iter < iterations; iter++) {
 
-            for (Example e : data.getData()) {
+            List<Example> examples = data.getData();
+            int[] classIds = data.getClassIds();
+            for (int i = 0; i < examples.size(); i++) {
+                trainExample(examples.get(i), classIds[i]);
+            }
+        }
+    }
 
-                int y = (int) e.getLabel();    // true label
+    /** Multiclass training, streaming over the examples once per iteration */
+    @Override
+    public void train(ExampleSource source) {
 
-                // Compute logits
-                double[] logits = new double[numClasses];
-                for (int c = 0; c < numClasses; c++) {
-                    logits[c] = dot(e, c);
+        // the classes and features aren't known up front, they're added as they're seen
+        classes = new LabelDictionary();
+        numClasses = 0;
+        numFeatures = 0;
+
+        W = useFloatWeights ? null : new double[0][0];
+        Wf = useFloatWeights ? new float[0][0] : null;
+        b = new double[0];
+
+        for (int iter = 0; iter < iterations; iter++) {
+            Iterator<Example> training = new ShuffleBuffer(source.open(), shuffleBufferSize, rand);
+
+            while (training.hasNext()) {
+                Example e = training.next();
+                int y = classes.addLabel(e.getLabel());
+                growModel(e, y);
+                trainExample(e, y);
+            }
+        }
+    }
+
+    /** Make room in W and b for class y and the features of e */
+    private void growModel(Example e, int y) {
+        int numNonZero = e.getNumNonZero();
+
+        if (numNonZero > 0 && e.getIndexAt(numNonZero - 1) >= numFeatures) {
+            numFeatures = Math.max(e.getIndexAt(numNonZero - 1) + 1, 2 * numFeatures);
+            for (int c = 0; c < numClasses; c++) {
+                if (Wf != null) {
+                    Wf[c] = Arrays.copyOf(Wf[c], numFeatures);
+                } else {
+                    W[c] = Arrays.copyOf(W[c], numFeatures);
+                }
+            }
+        }
+
+        if (y >= numClasses) {
+            if (Wf != null) {
+                Wf = Arrays.copyOf(Wf, y + 1);
+            } else {
+                W = Arrays.copyOf(W, y + 1);
+            }
+            b = Arrays.copyOf(b, y + 1);
+            for (int c = numClasses; c <= y; c++) {
+                if (Wf != null) {
+                    Wf[c] = new float[numFeatures];
+                } else {
+                    W[c] = new double[numFeatures];
                 }
+            }
+            numClasses = y + 1;
+        }
+    }
 
-                // Compute softmax probabilities
-                double[] probs = softmax(logits);
+    /** Take a gradient step on a single training example whose true class is y */
+    private void trainExample(Example e, int y) {
 
-                // GRADIENT UPDATE
-                for (int c = 0; c < numClasses; c++) {
-                    double error = probs[c] - (c == y ? 1.0 : 0.0);
+        int n = e.getNumNonZero();
+        if (n > stepIndices.length) {
+            stepIndices = new int[n];
+            stepValues = new double[n];
+        }
+        int[] indices = stepIndices;
+        double[] values = stepValues;
+        for (int i = 0; i < n; i++) {
+            indices[i] = e.getIndexAt(i);
+            values[i] = e.getValueAt(i);
+        }
+
+        // Compute logits
+        double[] logits = new double[numClasses];
+        for (int c = 0; c < numClasses; c++) {
+            double dp = b[c];
+            if (Wf != null) {
+                float[] w = Wf[c];
+                for (int i = 0; i < n; i++) {
+                    dp += w[indices[i]] * values[i];
+                }
+            } else {
+                double[] w = W[c];
+                for (int i = 0; i < n; i++) {
+                    dp += w[indices[i]] * values[i];
+                }
+            }
+            logits[c] = dp;
+        }
 
-                    // Update weights
-                    for (int f : e.getFeatureSet()) {
-                        double x = e.getFeature(f);
-                        W[c][f] -= alpha * error * x;
-                    }
+        // Compute softmax probabilities
+        double[] probs = softmax(logits);
 
-                    // Update bias
-                    b[c] -= alpha * error;
+        // GRADIENT UPDATE
+        for (int c = 0; c < numClasses; c++) {
+            double error = probs[c] - (c == y ? 1.0 : 0.0);
+
+            // Update weights
+            if (Wf != null) {
+                float[] w = Wf[c];
+                for (int i = 0; i < n; i++) {
+                    w[indices[i]] -= (float) (alpha * error * values[i]);
+                }
+            } else {
+                double[] w = W[c];
+                for (int i = 0; i < n; i++) {
+                    w[indices[i]] -= alpha * error * values[i];
                 }
             }
+
+            // Update bias
+            b[c] -= alpha * error;
         }
     }
 }
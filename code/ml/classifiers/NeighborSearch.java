@@ -0,0 +1,20 @@
+package ml.classifiers;
+
+import ml.data.Example;
+import ml.utils.TopKHeap;
+
+/**
+ * A way for KNNClassifier to find the nearest training examples to a query, e.g.
+ * by checking every training example or by searching a tree built over them.
+ */
+interface NeighborSearch {
+	/**
+	 * Find the nearest training examples to a query
+	 * 
+	 * @param example the query
+	 * @param query the query scattered into a dense array (at least as long as the number of training features)
+	 * @param queryNorm the squared length of the query
+	 * @param neighbors where the nearest training examples go, as (distance, position in the training data)
+	 */
+	public void search(Example example, double[] query, double queryNorm, TopKHeap neighbors);
+}
@@ -2,6 +2,8 @@ package ml.classifiers;
 
 import ml.data.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 /**
@@ -11,8 +13,9 @@ import java.util.Set;
  * @author Pavel Filippov and Tommy Liu
  * Assignment 5
  */
-public class OVAClassifier implements Classifier {
+public class OVAClassifier implements SeedableClassifier {
     private ClassifierFactory factory;
+    private Random rand = new Random(); // picks the seeds of the binary classifiers that are seedable
     private ArrayList<Classifier> classifiers;
     private ArrayList<Double> classLabels;
     private boolean trained = false;
@@ -27,6 +30,16 @@ public class OVAClassifier implements Classifier {
         this.classifiers = new ArrayList<Classifier>();
         this.classLabels = new ArrayList<Double>();
     }
+
+    /**
+     * Set the random seed, which seeds the binary classifiers (if they're
+     * SeedableClassifiers) so that training can be repeated.
+     * 
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        rand = new Random(seed);
+    }
     
     /**
      * Get the list of binary classifiers.
@@ -62,10 +75,13 @@ public class OVAClassifier implements Classifier {
             classLabels.add(label);
             
             // Create binary dataset for this class vs all others
-            DataSet binaryData = createBinaryDataset(data, label);
+            DataSet binaryData = createBinaryDataset(data, data.getLabelDictionary().getClassId(label));
             
             // Create and train classifier for this class
             Classifier binaryClassifier = factory.getClassifier();
+            if (binaryClassifier instanceof SeedableClassifier) {
+                ((SeedableClassifier) binaryClassifier).setSeed(rand.nextLong());
+            }
             binaryClassifier.train(binaryData);
             classifiers.add(binaryClassifier);
         }
@@ -77,15 +93,17 @@ public class OVAClassifier implements Classifier {
      * Create a binary dataset where the target class is positive (1.0) and all others are negative (0.0).
      * 
      * @param originalData the original multiclass dataset
-     * @param positiveClass the class to treat as positive
+     * @param positiveClass the class id (see DataSet.getLabelDictionary) to treat as positive
      * @return binary dataset for one-vs-all classification
      */
-    private DataSet createBinaryDataset(DataSet originalData, Double positiveClass) {
-        DataSet binaryData = new DataSet(originalData.getFeatureMap());
+    private DataSet createBinaryDataset(DataSet originalData, int positiveClass) {
+        DataSet binaryData = new DataSet(originalData);
+        List<Example> examples = originalData.getData();
+        int[] classIds = originalData.getClassIds();
         
-        for (Example example : originalData.getData()) {
-            Example binaryExample = new Example(example);
-            if (Math.abs(example.getLabel() - positiveClass) < 0.001) {
+        for (int i = 0; i < examples.size(); i++) {
+            Example binaryExample = examples.get(i).copy();
+            if (classIds[i] == positiveClass) {
                 binaryExample.setLabel(1.0); // positive class
             } else {
                 binaryExample.setLabel(-1.0); // negative class
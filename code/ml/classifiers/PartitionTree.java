@@ -0,0 +1,217 @@
+package ml.classifiers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ml.data.Example;
+import ml.utils.TopKHeap;
+
+/**
+ * A tree over the training examples for finding nearest neighbors (see KDTree and BallTree).
+ * Each node covers a range of the examples (in the tree's order of them) and has a way to
+ * bound the distance from a query to anything in it, so whole nodes that can't have anything
+ * closer than the neighbors found so far are skipped.  Leaves hold at most LEAF_SIZE examples.
+ * 
+ * The search is exact: the examples in the leaves that are visited are scored just like
+ * BruteForceSearch scores them, and a node is only skipped if its bound is farther than the
+ * farthest neighbor so far by more than the rounding error in those scores, so the result is
+ * the same as checking every training example.
+ */
+abstract class PartitionTree implements NeighborSearch {
+	protected static final int LEAF_SIZE = 16;
+	
+	private List<Example> examples;
+	private double[] norms; // squared length of each training example
+	private double tolerance; // relative rounding error allowed for in the bounds
+	
+	protected int dims; // the number of features used as coordinates
+	protected double[][] points; // the coordinates of each training example
+	protected int[] order; // positions of the training examples, each node covers a range of this
+	
+	// the nodes, indexed by node number
+	protected int numNodes = 0;
+	private int[] begin = new int[16];
+	private int[] end = new int[16];
+	private int[] left = new int[16];
+	private int[] right = new int[16];
+	
+	/**
+	 * @param examples the training examples
+	 * @param norms the squared length of each training example
+	 * @param dims the number of features
+	 */
+	public PartitionTree(List<Example> examples, double[] norms, int dims){
+		this.examples = examples;
+		this.norms = norms;
+		this.dims = dims;
+		
+		points = new double[examples.size()][dims];
+		order = new int[examples.size()];
+		double maxNorm = 0;
+		
+		for( int i = 0; i < points.length; i++ ){
+			Example e = examples.get(i);
+			
+			for( int j = 0; j < e.getNumNonZero() && e.getIndexAt(j) < dims; j++ ){
+				points[i][e.getIndexAt(j)] = e.getValueAt(j);
+			}
+			
+			order[i] = i;
+			maxNorm = Math.max(maxNorm, norms[i]);
+		}
+		
+		// the scores are |q|^2 + |x|^2 - 2 q.x, so their rounding error grows with the norms
+		tolerance = 1e-9 * maxNorm;
+	}
+	
+	/**
+	 * Build the tree, called by the subclass constructors once they're ready
+	 */
+	protected void build(){
+		if( order.length > 0 ){
+			build(0, order.length);
+		}
+	}
+	
+	private int build(int from, int to){
+		int node = numNodes++;
+		
+		if( node == begin.length ){
+			begin = Arrays.copyOf(begin, 2*node);
+			end = Arrays.copyOf(end, 2*node);
+			left = Arrays.copyOf(left, 2*node);
+			right = Arrays.copyOf(right, 2*node);
+		}
+		
+		begin[node] = from;
+		end[node] = to;
+		left[node] = -1;
+		right[node] = -1;
+		describe(node, from, to);
+		
+		if( to - from > LEAF_SIZE ){
+			int mid = partition(node, from, to);
+			
+			if( mid > from && mid < to ){
+				int l = build(from, mid);
+				int r = build(mid, to);
+				left[node] = l;
+				right[node] = r;
+			}
+		}
+		
+		return node;
+	}
+	
+	/**
+	 * Record whatever bounds node needs for the examples order[from] to order[to-1]
+	 * 
+	 * @param node
+	 * @param from
+	 * @param to
+	 */
+	protected abstract void describe(int node, int from, int to);
+	
+	/**
+	 * Reorder order[from] to order[to-1] into two groups to split node into
+	 * 
+	 * @param node
+	 * @param from
+	 * @param to
+	 * @return where the second group starts, or from if node can't be split
+	 */
+	protected abstract int partition(int node, int from, int to);
+	
+	/**
+	 * @param node
+	 * @param query
+	 * @return a lower bound on the squared distance from query to anything in node
+	 */
+	protected abstract double getLowerBound(int node, double[] query);
+	
+	public void search(Example example, double[] query, double queryNorm, TopKHeap neighbors){
+		if( numNodes > 0 ){
+			search(0, query, queryNorm, tolerance + 1e-9*queryNorm, neighbors);
+		}
+	}
+	
+	private void search(int node, double[] query, double queryNorm, double slack, TopKHeap neighbors){
+		if( left[node] == -1 ){
+			for( int i = begin[node]; i < end[node]; i++ ){
+				int id = order[i];
+				double distance = KNNClassifier.getSquaredDistance(query, queryNorm, examples.get(id), norms[id]);
+				
+				if( distance <= neighbors.getBound() ){
+					neighbors.offer(distance, id);
+				}
+			}
+		}else{
+			// visit the closer child first so the bound is tighter for the other one
+			double leftBound = getLowerBound(left[node], query);
+			double rightBound = getLowerBound(right[node], query);
+			int first = leftBound <= rightBound ? left[node] : right[node];
+			int second = leftBound <= rightBound ? right[node] : left[node];
+			
+			if( Math.min(leftBound, rightBound) - slack <= neighbors.getBound() ){
+				search(first, query, queryNorm, slack, neighbors);
+			}
+			
+			if( Math.max(leftBound, rightBound) - slack <= neighbors.getBound() ){
+				search(second, query, queryNorm, slack, neighbors);
+			}
+		}
+	}
+	
+	/**
+	 * Split order[from] to order[to-1] at the median of keys, so that the first half have
+	 * keys no bigger than the second half.  keys[i] is the key for order[from+i].
+	 * 
+	 * @param keys
+	 * @param from
+	 * @param to
+	 * @return where the second half starts
+	 */
+	protected int splitAtMedian(double[] keys, int from, int to){
+		int mid = (to - from)/2;
+		int lo = 0;
+		int hi = to - from - 1;
+		
+		// quickselect the median
+		while( lo < hi ){
+			double pivot = keys[(lo+hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			
+			while( i <= j ){
+				while( keys[i] < pivot ) i++;
+				while( keys[j] > pivot ) j--;
+				
+				if( i <= j ){
+					swap(keys, from, i, j);
+					i++;
+					j--;
+				}
+			}
+			
+			if( mid <= j ){
+				hi = j;
+			}else if( mid >= i ){
+				lo = i;
+			}else{
+				break;
+			}
+		}
+		
+		return from + mid;
+	}
+	
+	private void swap(double[] keys, int from, int i, int j){
+		double key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		
+		int id = order[from+i];
+		order[from+i] = order[from+j];
+		order[from+j] = id;
+	}
+}
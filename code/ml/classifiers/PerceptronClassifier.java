@@ -1,13 +1,15 @@
 package ml.classifiers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.Iterator;
 import java.util.Random;
 
 import ml.data.DataSet;
 import ml.data.Example;
+import ml.data.ExampleSource;
+import ml.data.ShuffleBuffer;
 
 /**
  * Basic perceptron classifier
@@ -15,39 +17,45 @@ import ml.data.Example;
  * @author dkauchak
  *
  */
-public class PerceptronClassifier implements Classifier {
-	protected HashMap<Integer, Double> weights; // the feature weights
+public class PerceptronClassifier implements StreamingClassifier, SeedableClassifier {
+	protected double[] weights; // the feature weights, indexed by feature index
 	protected double b = 0; // the intersect weight
 	
 	protected int iterations = 10;
+	protected int shuffleBufferSize = 10000; // examples held at once when training from an ExampleSource
+	protected Random rand = new Random(); // for shuffling the examples each iteration
 		
 	/**
 	 * Get a weight vector over the set of features with each weight
 	 * set to 0
 	 * 
-	 * @param features the set of features to learn over
+	 * @param numFeatures the number of features to learn over
 	 * @return
 	 */
-	protected HashMap<Integer, Double> getZeroWeights(Set<Integer> features){
-		HashMap<Integer, Double> temp = new HashMap<Integer, Double>();
-		
-		for( Integer f: features){
-			temp.put(f, 0.0);
-		}
-		
-		return temp;
+	protected double[] getZeroWeights(int numFeatures){
+		return new double[numFeatures];
 	}
 	
 	/**
 	 * Initialize the weights and the intersect value
 	 * 
-	 * @param features
+	 * @param numFeatures
 	 */
-	protected void initializeWeights(Set<Integer> features){
-		weights = getZeroWeights(features);
+	protected void initializeWeights(int numFeatures){
+		weights = getZeroWeights(numFeatures);
 		b = 0;
 	}
 	
+	/**
+	 * Make room in the weights for at least numFeatures features, when training
+	 * from an ExampleSource the number of features isn't known up front
+	 * 
+	 * @param numFeatures
+	 */
+	protected void growWeights(int numFeatures){
+		weights = Arrays.copyOf(weights, Math.max(numFeatures, 2*weights.length));
+	}
+	
 	/**
 	 * Set the number of iterations the perceptron should run during training
 	 * 
@@ -57,33 +65,86 @@ public class PerceptronClassifier implements Classifier {
 		this.iterations = iterations;
 	}
 	
+	/**
+	 * Set how many examples are held in memory at once to shuffle them when
+	 * training from an ExampleSource (see ShuffleBuffer)
+	 * 
+	 * @param shuffleBufferSize
+	 */
+	public void setShuffleBufferSize(int shuffleBufferSize){
+		this.shuffleBufferSize = shuffleBufferSize;
+	}
+	
+	/**
+	 * Set the random seed used to shuffle the examples, so training is repeatable
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed){
+		rand = new Random(seed);
+	}
+	
 	public void train(DataSet data) {
-		initializeWeights(data.getAllFeatureIndices());
+		initializeWeights(data.getNumFeatures());
 		
-		ArrayList<Example> training = (ArrayList<Example>)data.getData().clone();
+		ArrayList<Example> training = new ArrayList<Example>(data.getData());
 		
 		for( int it = 0; it < iterations; it++ ){
-			Collections.shuffle(training);
+			Collections.shuffle(training, rand);
 			
 			for( Example e: training ){
-				if( getPrediction(e) != e.getLabel() ){
-					double label = e.getLabel();
-					
-					// update the weights
-					//for( Integer featureIndex: weights.keySet() ){
-					for( Integer featureIndex: e.getFeatureSet() ){
-						double oldWeight = weights.get(featureIndex);
-						double featureValue = e.getFeature(featureIndex);
-						
-						weights.put(featureIndex, oldWeight + featureValue*label);
-					}
-					
-					// update b
-					b += label;					
+				trainExample(e);
+			}
+		}
+		
+		finishTraining();
+	}
+	
+	public void train(ExampleSource source) {
+		initializeWeights(0);
+		
+		for( int it = 0; it < iterations; it++ ){
+			Iterator<Example> training = new ShuffleBuffer(source.open(), shuffleBufferSize, rand);
+			
+			while( training.hasNext() ){
+				Example e = training.next();
+				
+				// the features are sorted, so the last one has the largest index
+				if( e.getNumNonZero() > 0 && e.getIndexAt(e.getNumNonZero()-1) >= weights.length ){
+					growWeights(e.getIndexAt(e.getNumNonZero()-1)+1);
 				}
+				
+				trainExample(e);
+			}
+		}
+		
+		finishTraining();
+	}
+	
+	/**
+	 * Update the weights based on a single training example
+	 * 
+	 * @param e
+	 */
+	protected void trainExample(Example e){
+		if( getPrediction(e) != e.getLabel() ){
+			double label = e.getLabel();
+			
+			// update the weights
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				weights[e.getIndexAt(i)] += e.getValueAt(i)*label;
 			}
+			
+			// update b
+			b += label;
 		}
 	}
+	
+	/**
+	 * Called once all of the training examples have been seen
+	 */
+	protected void finishTraining(){
+	}
 
 	@Override
 	public double classify(Example example) {
@@ -114,7 +175,7 @@ public class PerceptronClassifier implements Classifier {
 	 * @param inputB the b value to use
 	 * @return the prediction
 	 */
-	protected static double getPrediction(Example e, HashMap<Integer, Double> w, double inputB){
+	protected static double getPrediction(Example e, double[] w, double inputB){
 		double sum = getDistanceFromHyperplane(e,w,inputB);
 
 		if( sum > 0 ){
@@ -126,13 +187,19 @@ public class PerceptronClassifier implements Classifier {
 		}
 	}
 	
-	protected static double getDistanceFromHyperplane(Example e, HashMap<Integer, Double> w, double inputB){
+	protected static double getDistanceFromHyperplane(Example e, double[] w, double inputB){
 		double sum = inputB;
 		
-		//for(Integer featureIndex: w.keySet()){
 		// only need to iterate over non-zero features
-		for( Integer featureIndex: e.getFeatureSet()){
-			sum += w.get(featureIndex) * e.getFeature(featureIndex);
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			int featureIndex = e.getIndexAt(i);
+			
+			// features never seen in training have no weight (the features are sorted, so that's all the rest)
+			if( featureIndex >= w.length ){
+				break;
+			}
+			
+			sum += w[featureIndex] * e.getValueAt(i);
 		}
 		
 		return sum;
@@ -141,11 +208,8 @@ public class PerceptronClassifier implements Classifier {
 	public String toString(){
 		StringBuffer buffer = new StringBuffer();
 		
-		ArrayList<Integer> temp = new ArrayList<Integer>(weights.keySet());
-		Collections.sort(temp);
-		
-		for(Integer index: temp){
-			buffer.append(index + ":" + weights.get(index) + " ");
+		for( int index = 0; index < weights.length; index++ ){
+			buffer.append(index + ":" + weights[index] + " ");
 		}
 		
 		return buffer.substring(0, buffer.length()-1);
@@ -0,0 +1,14 @@
+package ml.classifiers;
+
+/**
+ * A classifier that makes random choices (e.g. the order it trains on the examples in)
+ * and can be seeded so that training, and so its results, can be repeated.
+ */
+public interface SeedableClassifier extends Classifier {
+	/**
+	 * Set the random seed for this classifier's random choices
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed);
+}
@@ -0,0 +1,17 @@
+package ml.classifiers;
+
+import ml.data.ExampleSource;
+
+/**
+ * A classifier that can also train from an ExampleSource, reading through the examples
+ * once per training iteration rather than needing all of them in a DataSet.  Memory use
+ * then depends on the number of features, not the number of examples.
+ */
+public interface StreamingClassifier extends Classifier {
+	/**
+	 * Train this classifier by streaming over the examples from source
+	 * 
+	 * @param source
+	 */
+	public void train(ExampleSource source);
+}
@@ -0,0 +1,95 @@
+package ml.data;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Iterates over a list of examples in mini-batches (see ExampleBatch).  Batch b holds
+ * the examples at positions b*batchSize to (b+1)*batchSize-1, and the batches can be
+ * visited in a random order, which shuffles the data a block at a time while keeping
+ * the examples in each batch next to each other in memory.
+ * 
+ * The same ExampleBatch is filled in for every batch, so a batch is only valid until
+ * next is called again.
+ */
+public class BatchIterator implements Iterator<ExampleBatch> {
+	private List<Example> examples;
+	private int batchSize;
+	private int[] batchOrder; // the order to visit the batches in
+	private int nextBatch = 0;
+	private ExampleBatch batch;
+	
+	/**
+	 * Iterate over the batches in order
+	 * 
+	 * @param examples
+	 * @param batchSize the number of examples in each batch (the last one may have fewer)
+	 */
+	public BatchIterator(List<Example> examples, int batchSize){
+		this(examples, batchSize, null);
+	}
+	
+	/**
+	 * Iterate over the batches in a random order
+	 * 
+	 * @param examples
+	 * @param batchSize the number of examples in each batch (the last one may have fewer)
+	 * @param random used to shuffle the batches, or null to visit them in order
+	 */
+	public BatchIterator(List<Example> examples, int batchSize, Random random){
+		if( batchSize < 1 ){
+			throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+		}
+		
+		this.examples = examples;
+		this.batchSize = batchSize;
+		this.batch = new ExampleBatch(batchSize);
+		
+		int numBatches = (examples.size() + batchSize - 1)/batchSize;
+		batchOrder = new int[numBatches];
+		
+		for( int i = 0; i < numBatches; i++ ){
+			batchOrder[i] = i;
+		}
+		
+		if( random != null ){
+			for( int i = numBatches-1; i > 0; i-- ){
+				int j = random.nextInt(i+1);
+				int temp = batchOrder[i];
+				batchOrder[i] = batchOrder[j];
+				batchOrder[j] = temp;
+			}
+		}
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return nextBatch < batchOrder.length;
+	}
+	
+	@Override
+	public ExampleBatch next() {
+		if( !hasNext() ){
+			throw new NoSuchElementException();
+		}
+		
+		int begin = batchOrder[nextBatch]*batchSize;
+		int end = Math.min(begin + batchSize, examples.size());
+		nextBatch++;
+		
+		batch.clear();
+		
+		for( int i = begin; i < end; i++ ){
+			batch.add(examples.get(i));
+		}
+		
+		return batch;
+	}
+	
+	@Override
+	public void remove() {
+		// OPTIONAL, so we won't implement
+	}
+}
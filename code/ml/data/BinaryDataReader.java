@@ -0,0 +1,178 @@
+package ml.data;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * A class for reading examples from the binary format written by BinaryDataWriter.
+ * 
+ * The file is memory mapped rather than read, so opening it doesn't parse anything.
+ * The examples returned are views onto the mapped file and their features are only
+ * paged in by the operating system when they're accessed.
+ */
+public class BinaryDataReader implements Iterator<Example>{
+	private int numExamples;
+	private int numFeatures;
+	private int nextExample = 0;
+	
+	// the mapped sections of the file
+	private MappedRegion labels;
+	private MappedRegion rowStarts;
+	private MappedRegion indices;
+	private MappedRegion values;
+	
+	private HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+	
+	/**
+	 * @param filename the binary file containing the examples
+	 */
+	public BinaryDataReader(String filename){
+		try {
+			RandomAccessFile file = new RandomAccessFile(filename, "r");
+			FileChannel channel = file.getChannel();
+			
+			try{
+				MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinaryDataWriter.HEADER_SIZE);
+				
+				if( header.getInt() != BinaryDataWriter.MAGIC ){
+					throw new RuntimeException("Not a binary data set file: " + filename);
+				}
+				
+				int version = header.getInt();
+				
+				if( version != BinaryDataWriter.VERSION ){
+					throw new RuntimeException("Unsupported binary data set version: " + version);
+				}
+				
+				numExamples = header.getInt();
+				numFeatures = header.getInt();
+				long numValues = header.getLong();
+				
+				long offset = BinaryDataWriter.HEADER_SIZE;
+				labels = new MappedRegion(channel, offset, 8L*numExamples);
+				offset += 8L*numExamples;
+				rowStarts = new MappedRegion(channel, offset, 8L*(numExamples+1));
+				offset += 8L*(numExamples+1);
+				indices = new MappedRegion(channel, offset, 4L*numValues);
+				offset += 4L*numValues;
+				values = new MappedRegion(channel, offset, 8L*numValues);
+				offset += 8L*numValues;
+				
+				// the feature map is the only thing that needs to be decoded
+				channel.position(offset);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+				int size = in.readInt();
+				
+				for( int i = 0; i < size; i++ ){
+					int featureIndex = in.readInt();
+					featureMap.put(featureIndex, in.readUTF());
+				}
+			}finally{
+				// the mappings stay valid after the file is closed
+				file.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return nextExample < numExamples;
+	}
+	
+	@Override
+	public Example next() {
+		Example data = null;
+		
+		if( hasNext() ){
+			long start = rowStarts.getLong(8L*nextExample);
+			long end = rowStarts.getLong(8L*(nextExample+1));
+			data = new MappedExample(this, start, (int)(end-start), labels.getDouble(8L*nextExample));
+			nextExample++;
+		}
+		
+		return data;
+	}
+	
+	@Override
+	public void remove() {
+		// OPTIONAL, so we won't implement
+	}
+	
+	/**
+	 * Get the feature mapping (i.e. association from feature index to name)
+	 * stored in the file.
+	 * 
+	 * @return feature map
+	 */
+	public HashMap<Integer, String> getFeatureMap(){
+		return featureMap;
+	}
+	
+	/**
+	 * @return the number of features stored in the file
+	 */
+	public int getNumFeatures(){
+		return numFeatures;
+	}
+	
+	/**
+	 * @param pos position in the file's index array
+	 * @return the feature index at pos
+	 */
+	int getIndex(long pos){
+		return indices.getInt(4*pos);
+	}
+	
+	/**
+	 * @param pos position in the file's value array
+	 * @return the feature value at pos
+	 */
+	double getValue(long pos){
+		return values.getDouble(8*pos);
+	}
+	
+	/**
+	 * A section of the file mapped into memory.  A single mapping is limited to 2GB,
+	 * so larger sections are mapped as multiple chunks.  The chunk size is a multiple
+	 * of 8 and every section holds values of a single type, so a value never
+	 * straddles two chunks.
+	 */
+	private static class MappedRegion{
+		private static final int CHUNK_BITS = 30;
+		private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+		
+		private MappedByteBuffer[] chunks;
+		
+		public MappedRegion(FileChannel channel, long offset, long length) throws IOException{
+			int numChunks = (int)((length + CHUNK_MASK) >>> CHUNK_BITS);
+			chunks = new MappedByteBuffer[numChunks];
+			
+			for( int i = 0; i < numChunks; i++ ){
+				long chunkStart = ((long)i) << CHUNK_BITS;
+				long chunkLength = Math.min(CHUNK_MASK+1, length-chunkStart);
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset+chunkStart, chunkLength);
+			}
+		}
+		
+		public int getInt(long byteOffset){
+			return chunks[(int)(byteOffset >>> CHUNK_BITS)].getInt((int)(byteOffset & CHUNK_MASK));
+		}
+		
+		public long getLong(long byteOffset){
+			return chunks[(int)(byteOffset >>> CHUNK_BITS)].getLong((int)(byteOffset & CHUNK_MASK));
+		}
+		
+		public double getDouble(long byteOffset){
+			return chunks[(int)(byteOffset >>> CHUNK_BITS)].getDouble((int)(byteOffset & CHUNK_MASK));
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package ml.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.HashMap;
+
+/**
+ * Writes a data set out in a compact binary format that can be opened again with
+ * BinaryDataReader without any parsing.  The file contains the examples as a CSR
+ * (compressed sparse row) matrix followed by the feature map:
+ * 
+ * header:     int magic, int version, int numExamples, int numFeatures, long numValues
+ * labels:     double[numExamples]
+ * rowStarts:  long[numExamples+1], the position of each example's first feature
+ * indices:    int[numValues], the feature indices of all the examples one after another
+ * values:     double[numValues], the matching feature values
+ * featureMap: int size, then size pairs of (int featureIndex, UTF feature name)
+ */
+public class BinaryDataWriter {
+	public static final int MAGIC = 0x4d4c4453; // "MLDS"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 24; // in bytes
+	
+	/**
+	 * Write data to filename in the binary format
+	 * 
+	 * @param data the data set to write
+	 * @param filename the location of the file
+	 * @throws IOException
+	 */
+	public static void write(DataSet data, String filename) throws IOException{
+		List<Example> examples = data.getData();
+		long numValues = 0;
+		
+		for( Example e: examples ){
+			numValues += e.getNumNonZero();
+		}
+		
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		
+		try{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(examples.size());
+			out.writeInt(data.getNumFeatures());
+			out.writeLong(numValues);
+			
+			for( Example e: examples ){
+				out.writeDouble(e.getLabel());
+			}
+			
+			long rowStart = 0;
+			
+			for( Example e: examples ){
+				out.writeLong(rowStart);
+				rowStart += e.getNumNonZero();
+			}
+			
+			out.writeLong(rowStart);
+			
+			for( Example e: examples ){
+				for( int i = 0; i < e.getNumNonZero(); i++ ){
+					out.writeInt(e.getIndexAt(i));
+				}
+			}
+			
+			for( Example e: examples ){
+				for( int i = 0; i < e.getNumNonZero(); i++ ){
+					out.writeDouble(e.getValueAt(i));
+				}
+			}
+			
+			HashMap<Integer, String> featureMap = data.getFeatureMap();
+			out.writeInt(featureMap.size());
+			
+			for( Integer featureIndex: featureMap.keySet() ){
+				out.writeInt(featureIndex);
+				out.writeUTF(featureMap.get(featureIndex));
+			}
+		}finally{
+			out.close();
+		}
+	}
+}
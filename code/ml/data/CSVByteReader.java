@@ -0,0 +1,315 @@
+package ml.data;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * A class for reading data examples from CSV files that works directly on the bytes
+ * of the memory mapped file.  Numbers are parsed in place, so unlike CSVDataReader no
+ * Strings are created for the lines or the cells.
+ * 
+ * The file is expected to look like what DataSet reads: optional lines starting
+ * with # at the top, then a header line with the column names, then one example
+ * per line with the label in the last column.  Blank lines are skipped.
+ */
+public class CSVByteReader implements Iterator<Example>{
+	// how much of the file is mapped at a time
+	private static final long WINDOW_SIZE = 1L << 28;
+	
+	// the window is moved forward once less than this is left in it, so a line
+	// is always completely inside of the window.  Lines can't be longer than this.
+	private static final int MAX_LINE_LENGTH = 1 << 20;
+	
+	private FileChannel channel;
+	private long fileSize;
+	private long windowStart; // where in the file the current window starts
+	private MappedByteBuffer buffer; // the current window
+	private int pos; // current position in the window
+	private boolean hasLine = false;
+	private boolean endOfLine; // whether the last cell parsed was the last one on its line
+	
+	private ArrayList<String> headers = new ArrayList<String>();
+	private int labelIndex;
+	private NumberParser parser = new NumberParser();
+	private byte[] scratch = new byte[64]; // only used for numbers the fast path can't handle
+	
+	/**
+	 * @param filename the CSV file containing the examples
+	 */
+	public CSVByteReader(String filename){
+		try {
+			RandomAccessFile file = new RandomAccessFile(filename, "r");
+			channel = file.getChannel();
+			fileSize = channel.size();
+			map(0);
+			
+			// ignore any lines at the beginning that start with #
+			hasLine = skipBlankLines();
+			
+			while( hasLine && buffer.get(pos) == '#' ){
+				skipLine();
+				hasLine = skipBlankLines();
+			}
+			
+			// parse the headers
+			if( hasLine ){
+				int start = pos;
+				int lineEnd = skipLine();
+				
+				for( int i = start; i <= lineEnd; i++ ){
+					if( i == lineEnd || buffer.get(i) == ',' ){
+						headers.add(toString(start, trimEnd(start, i)));
+						start = i+1;
+					}
+				}
+				
+				hasLine = skipBlankLines();
+			}
+			
+			labelIndex = headers.size()-1;
+			
+			if( !hasLine ){
+				close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			hasLine = false;
+			close();
+		}
+	}
+	
+	/**
+	 * Get the column names from the header line of the file
+	 * 
+	 * @return the headers, the last one is the label
+	 */
+	public ArrayList<String> getHeaders(){
+		return headers;
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return hasLine;
+	}
+	
+	@Override
+	public Example next() {
+		Example data = null;
+		
+		if( hasNext() ){
+			data = new DenseExample(headers.size()-1);
+			
+			int column = 0;
+			int featureIndex = 0;
+			endOfLine = false;
+			
+			while( !endOfLine ){
+				double value = parseCell();
+				
+				if( column == labelIndex ){
+					data.setLabel(value);
+				}else{
+					data.addFeature(featureIndex, value);
+					featureIndex++;
+				}
+				
+				column++;
+			}
+			
+			try {
+				hasLine = skipBlankLines();
+			} catch (IOException e) {
+				e.printStackTrace();
+				hasLine = false;
+			}
+			
+			if( !hasLine ){
+				close();
+			}
+		}
+		
+		return data;
+	}
+	
+	@Override
+	public void remove() {
+		// OPTIONAL, so we won't implement
+	}
+	
+	/**
+	 * Close the file once there's nothing left to read (or it couldn't be read),
+	 * the window stays mapped after the channel is closed
+	 */
+	private void close(){
+		try {
+			if( channel != null ){
+				channel.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Map the window of the file starting at fileOffset and move the
+	 * current position to the start of it.
+	 * 
+	 * @param fileOffset
+	 * @throws IOException
+	 */
+	private void map(long fileOffset) throws IOException{
+		windowStart = fileOffset;
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, fileOffset, Math.min(WINDOW_SIZE, fileSize-fileOffset));
+		pos = 0;
+	}
+	
+	/**
+	 * Move pos to the start of the next line that isn't blank, moving the window forward
+	 * if the line might not fit in what's left of it.
+	 * 
+	 * @return whether there is another line
+	 * @throws IOException
+	 */
+	private boolean skipBlankLines() throws IOException{
+		while( true ){
+			if( buffer.limit() - pos < MAX_LINE_LENGTH && windowStart + buffer.limit() < fileSize ){
+				map(windowStart + pos);
+			}
+			
+			int i = pos;
+			
+			while( i < buffer.limit() && isSpace(buffer.get(i)) ){
+				i++;
+			}
+			
+			if( i >= buffer.limit() ){
+				return false;
+			}else if( buffer.get(i) == '\n' ){
+				pos = i+1;
+			}else{
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Move pos to the start of the next line
+	 * 
+	 * @return the end of the current line (exclusive, with trailing whitespace removed)
+	 */
+	private int skipLine(){
+		int start = pos;
+		
+		while( pos < buffer.limit() && buffer.get(pos) != '\n' ){
+			pos++;
+		}
+		
+		int lineEnd = trimEnd(start, pos);
+		pos++;
+		return lineEnd;
+	}
+	
+	/**
+	 * @param start
+	 * @param end
+	 * @return end moved back past any whitespace (including \r)
+	 */
+	private int trimEnd(int start, int end){
+		while( end > start && isSpace(buffer.get(end-1)) ){
+			end--;
+		}
+		
+		return end;
+	}
+	
+	private static boolean isSpace(byte b){
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+	
+	/**
+	 * Parse the number in the cell starting at pos, move pos past the comma or end of
+	 * line after it and set endOfLine.
+	 * 
+	 * This makes a single pass over the bytes of the cell, numbers that NumberParser
+	 * can't convert exactly are handed to Double.parseDouble.
+	 * 
+	 * @return the number
+	 */
+	private double parseCell(){
+		MappedByteBuffer buf = buffer;
+		int limit = buf.limit();
+		int start = pos;
+		int i = pos;
+		
+		// the end of the window is the end of the file (see skipBlankLines), treat it like a new line
+		byte b = i < limit ? buf.get(i) : (byte)'\n';
+		
+		while( b == ' ' || b == '\t' ){
+			b = ++i < limit ? buf.get(i) : (byte)'\n';
+		}
+		
+		double value = parser.parse(buf, i, limit);
+		i = parser.getEnd();
+		b = i < limit ? buf.get(i) : (byte)'\n';
+		
+		while( isSpace(b) ){
+			b = ++i < limit ? buf.get(i) : (byte)'\n';
+		}
+		
+		if( parser.isExact() && (b == ',' || b == '\n') ){
+			endCell(i, b, limit);
+			return value;
+		}else{
+			// slow path, this also takes care of reporting badly formatted numbers
+			while( b != ',' && b != '\n' ){
+				b = ++i < limit ? buf.get(i) : (byte)'\n';
+			}
+			
+			endCell(i, b, limit);
+			
+			while( start < i && isSpace(buf.get(start)) ){
+				start++;
+			}
+			
+			return Double.parseDouble(toString(start, trimEnd(start, i)));
+		}
+	}
+	
+	/**
+	 * Finish a cell whose terminating comma or new line b is at position i
+	 * 
+	 * @param i
+	 * @param b
+	 * @param limit
+	 */
+	private void endCell(int i, byte b, int limit){
+		if( i >= limit && windowStart + limit < fileSize ){
+			throw new RuntimeException("Line longer than " + MAX_LINE_LENGTH + " bytes");
+		}
+		
+		endOfLine = b == '\n';
+		pos = i+1;
+	}
+	
+	/**
+	 * @param start
+	 * @param end
+	 * @return the bytes in the window between start and end as a String
+	 */
+	private String toString(int start, int end){
+		if( end-start > scratch.length ){
+			scratch = new byte[end-start];
+		}
+		
+		for( int i = start; i < end; i++ ){
+			scratch[i-start] = buffer.get(i);
+		}
+		
+		return new String(scratch, 0, end-start, StandardCharsets.UTF_8);
+	}
+}
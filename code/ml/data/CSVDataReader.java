@@ -42,11 +42,12 @@ public class CSVDataReader implements Iterator<Example>{
 		Example data = null;
 		
 		if( hasNext() ){
-			data = new Example();
-			
 			// parse the line
 			String[] parts = nextLine.split(",");
 			
+			// every column is present in a CSV file, so store the features densely
+			data = new DenseExample(parts.length-1);
+			
 			data.setLabel(Double.parseDouble(parts[labelIndex]));
 	
 			int featureIndex = 0;
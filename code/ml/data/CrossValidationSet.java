@@ -1,19 +1,21 @@
 package ml.data;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Random;
 
 /**
  * Data set for storing and retrieving an n-fold cross validation data set.
  * 
+ * The splits are views onto the original data set rather than copies of it.  All
+ * of the splits share one ordering of the examples, so making a split doesn't
+ * copy anything and the test portions of the splits never overlap.
+ * 
  * @author dkauchak
  *
  */
 public class CrossValidationSet {
 	private DataSet dataset;
 	private int numSplits;
-	private boolean randomize = false;
+	private int[] order = null; // the order the examples are split in (see DataSet.getBaseOrder)
 	
 	/**
 	 * Generate a cross-validation with numSplits on dataset
@@ -24,6 +26,7 @@ public class CrossValidationSet {
 	public CrossValidationSet(DataSet dataset, int numSplits){
 		this.dataset = dataset;
 		this.numSplits = numSplits;
+		this.order = dataset.getBaseOrder();
 	}
 	
 	/**
@@ -36,7 +39,21 @@ public class CrossValidationSet {
 	public CrossValidationSet(DataSet dataset, int numSplits, boolean randomize){
 		this.dataset = dataset;
 		this.numSplits = numSplits;
-		this.randomize = randomize;
+		this.order = randomize ? dataset.getShuffledOrder(new Random(System.nanoTime())) : dataset.getBaseOrder();
+	}
+	
+	/**
+	 * Generate a *random* cross-validation with numSplits on dataset, randomizing
+	 * with seed so that the same seed always gives the same splits
+	 * 
+	 * @param dataset
+	 * @param numSplits the number of splits for the data set
+	 * @param seed the random seed
+	 */
+	public CrossValidationSet(DataSet dataset, int numSplits, long seed){
+		this.dataset = dataset;
+		this.numSplits = numSplits;
+		this.order = dataset.getShuffledOrder(new Random(seed));
 	}
 	
 	/**
@@ -59,33 +76,58 @@ public class CrossValidationSet {
 		if( splitNum >= numSplits || splitNum < 0){
 			return null;
 		}else{
-			ArrayList<Example> data;
-			
-			if( randomize ){
-				data = (ArrayList<Example>)dataset.getData().clone();
-				Collections.shuffle(data, new Random(System.nanoTime()));
-			}else{
-				data = dataset.getData();
-			}
-			
-			// this tends to make the last split more off-sized, but it will suffice
-			int partSize = (int)(data.size()/numSplits);
-			int begin = partSize*splitNum;
-			int end = splitNum == numSplits-1 ? data.size() : partSize*(splitNum+1);
-			
-			DataSet train = new DataSet(dataset.getFeatureMap());
-			DataSet test = new DataSet(dataset.getFeatureMap());
-			
-			for( int i = 0; i < data.size(); i++ ){
-				// check if we're in the test range
-				if( i >= begin && i < end ){
-					test.addData(data.get(i));
-				}else{
-					train.addData(data.get(i));
-				}
-			}
+			DataSet train = dataset.getView(order, getSplitBegin(splitNum), getSplitEnd(splitNum), true);
+			DataSet test = dataset.getView(order, getSplitBegin(splitNum), getSplitEnd(splitNum), false);
 			
 			return new DataSetSplit(train, test);
 		}
 	}
+	
+	/**
+	 * Get all of the examples in the order they're split in, so the test examples
+	 * of split s are positions getSplitBegin(s) to getSplitEnd(s)-1, and the training
+	 * examples of each split are in the same order as they are here.
+	 * 
+	 * @return the examples, which share the original data set's examples
+	 */
+	public DataSet getAllData(){
+		// everything but an empty range
+		return dataset.getView(order, 0, 0, true);
+	}
+	
+	/**
+	 * @param splitNum
+	 * @return the position in getAllData of the first test example of split splitNum
+	 */
+	public int getSplitBegin(int splitNum){
+		// this tends to make the last split more off-sized, but it will suffice
+		return getPartSize()*splitNum;
+	}
+	
+	/**
+	 * @param splitNum
+	 * @return the position in getAllData after the last test example of split splitNum
+	 */
+	public int getSplitEnd(int splitNum){
+		return splitNum == numSplits-1 ? getSize() : getPartSize()*(splitNum+1);
+	}
+	
+	/**
+	 * @param position a position in getAllData
+	 * @return the split that the example at position is a test example in
+	 */
+	public int getSplit(int position){
+		int partSize = getPartSize();
+		
+		// with fewer examples than splits, they're all in the last one
+		return partSize == 0 ? numSplits-1 : Math.min(position/partSize, numSplits-1);
+	}
+	
+	private int getSize(){
+		return order == null ? dataset.getData().size() : order.length;
+	}
+	
+	private int getPartSize(){
+		return getSize()/numSplits;
+	}
 }
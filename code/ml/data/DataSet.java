@@ -1,13 +1,11 @@
 package ml.data;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -18,15 +16,34 @@ import java.util.Set;
  * @author dkauchak
  */
 public class DataSet {
-	private ArrayList<Example> data = new ArrayList<Example>(); // the data/examples in this data set
+	// the data/examples in this data set, for splits this is a view onto the original data set's examples
+	private List<Example> data = new ArrayList<Example>();
 	// the mapping from feature indices to the name of the feature
 	private HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
-	private HashSet<Double> labels = new HashSet<Double>();
+	private HashSet<Double> labels = new HashSet<Double>(); // null until needed for splits
+	
+	// class ids for the labels, built the first time they're needed (see buildClassIndex)
+	private LabelDictionary labelDictionary = null;
+	private int[] classIds = null; // class id of each example
+	private int[][] classExamples = null; // positions of the examples in each class
+	private boolean dense = false; // whether the examples are stored as DenseExamples
+	private boolean useFloat = false; // whether the feature values are stored as floats
+	private FeatureColumns columns = null; // feature-major view of the data, built on demand
+	private FeatureStatistics featureStatistics = null; // built on demand, then updated as examples are added
+	private int numFeatures = -1; // if set, the number of features regardless of the feature map
 	
 	// some constants for different file types
 	public static final int CSVFILE = 0;
 	public static final int TEXTFILE = 1;
-
+	public static final int BINARYFILE = 2; // written by writeBinary
+	public static final int LIBSVMFILE = 3; // sparse label index:value lines, written by writeLibSVM
+	
+	// data sets with at least this proportion of non-zero feature values are
+	// stored densely, anything sparser uses the sparse representation.  A dense
+	// value takes 8 bytes vs. 12 for a sparse one, but dense access is a plain array
+	// lookup, so dense storage pays off well before the memory break-even point.
+	public static final double DENSE_THRESHOLD = 0.25;
+	
 	/**
 	 * Create a new data set.  
 	 * 
@@ -34,42 +51,72 @@ public class DataSet {
 	 * @param fileType what type of file, using the class defined constants (e.g. CSVFILE)
 	 */
 	public DataSet(String filename, int fileType){
+		this(filename, fileType, 1);
+	}
+	
+	/**
+	 * Create a new data set, using numThreads threads to load it.  Text files
+	 * are loaded in parallel, the other file types ignore numThreads.
+	 * 
+	 * @param filename the location of the file
+	 * @param fileType what type of file, using the class defined constants (e.g. CSVFILE)
+	 * @param numThreads the number of threads to use for loading
+	 */
+	public DataSet(String filename, int fileType, int numThreads){
+		this(filename, fileType, numThreads, null);
+	}
+	
+	/**
+	 * Create a new data set, using numThreads threads to load it.  For text files,
+	 * if hasher isn't null the words are hashed into hasher.getNumFeatures() features
+	 * rather than each getting their own.  The other file types ignore hasher.
+	 * 
+	 * @param filename the location of the file
+	 * @param fileType what type of file, using the class defined constants (e.g. CSVFILE)
+	 * @param numThreads the number of threads to use for loading
+	 * @param hasher the hasher for text files, or null
+	 */
+	public DataSet(String filename, int fileType, int numThreads, FeatureHasher hasher){
 		if( fileType == CSVFILE ){
-			int numColumns = -1;
-
-			// figure out how many columns there are then call
-			try {
-				BufferedReader in = new BufferedReader(new FileReader(filename));
-
-				// ignore any lines at the beginning that start with #
-				String line = in.readLine();
-
-				while( line.startsWith("#")){
-					line = in.readLine();
-				}
-				
-				// parse the headers
-				String[] headers = line.split(",");
-				int labelIndex = headers.length-1;					
-				int featureIndex = 0;
-					
-				for( int i = 0; i < headers.length; i++ ){
-					if( i != labelIndex ){
-						featureMap.put(featureIndex, headers[i]);
-						featureIndex++;
-					}
+			CSVByteReader reader = new CSVByteReader(filename);
+			
+			// the last column is the label, the rest are features
+			ArrayList<String> headers = reader.getHeaders();
+			int labelIndex = headers.size()-1;
+			int featureIndex = 0;
+			
+			for( int i = 0; i < headers.size(); i++ ){
+				if( i != labelIndex ){
+					featureMap.put(featureIndex, headers.get(i));
+					featureIndex++;
 				}
-					
-				CSVDataReader reader = new CSVDataReader(in, labelIndex);
-				initialize(reader);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
 			}
+			
+			initialize(reader);
+			setDense(getDensity() >= DENSE_THRESHOLD);
 		}else if( fileType == TEXTFILE ){
-			TextDataReader reader = new TextDataReader(filename);
+			TextDataReader reader = numThreads > 1 ? new TextDataReader(filename, numThreads, hasher) : new TextDataReader(filename, hasher);
 			initialize(reader);
 			featureMap = reader.getFeatureMap();
+			
+			if( hasher != null ){
+				// hashed features are used sparsely, but weight vectors etc. still need room for all of them
+				numFeatures = hasher.getNumFeatures();
+			}
+			
+			setDense(getDensity() >= DENSE_THRESHOLD);
+		}else if( fileType == BINARYFILE ){
+			// the examples are views onto the mapped file, so we leave them as they
+			// are rather than touching all of the data to pick a storage
+			BinaryDataReader reader = new BinaryDataReader(filename);
+			initialize(reader);
+			featureMap = reader.getFeatureMap();
+			numFeatures = reader.getNumFeatures();
+		}else if( fileType == LIBSVMFILE ){
+			LibSVMReader reader = new LibSVMReader(filename);
+			initialize(reader);
+			featureMap = reader.getFeatureMap();
+			setDense(getDensity() >= DENSE_THRESHOLD);
 		}
 	}
 	
@@ -85,7 +132,138 @@ public class DataSet {
 			labels.add(next.getLabel());
 		}
 	}
+	
+	/**
+	 * Write this data set out in the binary format (see BinaryDataWriter).  Loading
+	 * the file again with the BINARYFILE type memory maps it instead of parsing it,
+	 * which is much faster than reading the original CSV or text file.
+	 * 
+	 * @param filename the location of the file
+	 */
+	public void writeBinary(String filename){
+		try {
+			BinaryDataWriter.write(this, filename);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Write this data set out in the sparse LIBSVM format (see LibSVMWriter), which
+	 * can be loaded again with the LIBSVMFILE type without tokenizing any text.
+	 * 
+	 * @param filename the location of the file
+	 */
+	public void writeLibSVM(String filename){
+		try {
+			LibSVMWriter.write(this, filename);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Get the proportion of the feature values in this data set that are non-zero.
+	 * 
+	 * @return the density, between 0 and 1
+	 */
+	public double getDensity(){
+		long nonZero = 0;
 		
+		for( Example e: data ){
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				if( e.getValueAt(i) != 0 ){
+					nonZero++;
+				}
+			}
+		}
+		
+		long total = (long)data.size() * getNumFeatures();
+		return total == 0 ? 0.0 : ((double)nonZero)/total;
+	}
+	
+	/**
+	 * Whether the examples in this data set are stored densely
+	 * 
+	 * @return true if the examples are DenseExamples
+	 */
+	public boolean isDense(){
+		return dense;
+	}
+	
+	/**
+	 * Convert the examples in this data set to dense (DenseExample) or
+	 * sparse (Example) storage.  Examples already stored the requested way
+	 * are left alone.
+	 * 
+	 * @param dense whether or not to store the examples densely
+	 */
+	public void setDense(boolean dense){
+		this.dense = dense;
+		convertExamples();
+	}
+	
+	/**
+	 * Whether the feature values in this data set are stored as floats
+	 * 
+	 * @return true if the examples are FloatExamples or DenseFloatExamples
+	 */
+	public boolean isFloat(){
+		return useFloat;
+	}
+	
+	/**
+	 * Convert the examples in this data set to store their feature values as
+	 * floats (FloatExample or DenseFloatExample, depending on isDense) or as
+	 * doubles.  Floats take half the memory per value but only keep about 7
+	 * significant digits.
+	 * 
+	 * @param useFloat whether or not to store the feature values as floats
+	 */
+	public void setFloat(boolean useFloat){
+		this.useFloat = useFloat;
+		convertExamples();
+	}
+	
+	/**
+	 * Convert any examples that aren't stored the way isDense and isFloat say they should be
+	 */
+	private void convertExamples(){
+		int numFeatures = getNumFeatures();
+		
+		for( int i = 0; i < data.size(); i++ ){
+			Example e = data.get(i);
+			Example converted = e;
+			
+			if( dense && useFloat ){
+				if( !(e instanceof DenseFloatExample) ){
+					converted = new DenseFloatExample(e, numFeatures);
+				}
+			}else if( dense ){
+				if( !(e instanceof DenseExample) ){
+					converted = new DenseExample(e, numFeatures);
+				}
+			}else if( useFloat ){
+				if( !(e instanceof FloatExample) ){
+					converted = FloatExample.sparseCopy(e);
+				}
+			}else if( e instanceof DenseExample || e instanceof FloatExample || e instanceof DenseFloatExample ){
+				converted = Example.sparseCopy(e);
+			}
+			
+			if( converted != e ){
+				getWritableData().set(i, converted);
+			}
+		}
+		
+		columns = null;
+		
+		if( useFloat ){
+			// rounding to floats changes the values a little
+			featureStatistics = null;
+		}
+	}
+	
 	/**
 	 * Constructs a new empty dataset (i.e. no examples) with the features
 	 * specified in the featuremap
@@ -96,6 +274,94 @@ public class DataSet {
 		this.featureMap = new HashMap<Integer, String>(featureMap);
 	}
 	
+	/**
+	 * Constructs a new empty dataset (i.e. no examples) with the same features
+	 * and storage (dense or sparse, float or double) as other
+	 * 
+	 * @param other
+	 */
+	public DataSet(DataSet other){
+		this(other.featureMap);
+		dense = other.dense;
+		useFloat = other.useFloat;
+		numFeatures = other.numFeatures;
+	}
+	
+	/**
+	 * Constructs a split of other whose examples are a view onto other's examples
+	 * (see ExampleView).  The split shares other's feature map and only works out
+	 * its labels if they're asked for, so making it doesn't copy anything.
+	 * 
+	 * @param other
+	 * @param view
+	 */
+	private DataSet(DataSet other, ExampleView view){
+		featureMap = other.featureMap;
+		dense = other.dense;
+		useFloat = other.useFloat;
+		numFeatures = other.numFeatures;
+		data = view;
+		labels = null;
+	}
+	
+	/**
+	 * Get a split of this data set with the examples at positions begin to end of
+	 * order or, if complement is set, all of the examples in order except those.
+	 * 
+	 * @param order positions in the base list (see getBaseOrder), or null for the order of the base list
+	 * @param begin
+	 * @param end
+	 * @param complement
+	 * @return the split, which shares this data set's examples
+	 */
+	DataSet getView(int[] order, int begin, int end, boolean complement){
+		return new DataSet(this, new ExampleView(getBase(), order, begin, end, complement));
+	}
+	
+	/**
+	 * @return the list that this data set's examples are stored in, which is
+	 * the original data set's list for splits
+	 */
+	private List<Example> getBase(){
+		return data instanceof ExampleView ? ((ExampleView)data).getBase() : data;
+	}
+	
+	/**
+	 * Get the positions of this data set's examples in the list they're stored in.
+	 * 
+	 * @return the positions, or null if this data set isn't a split and so they're
+	 * just 0 to getData().size()-1
+	 */
+	int[] getBaseOrder(){
+		if( !(data instanceof ExampleView) ){
+			return null;
+		}
+		
+		ExampleView view = (ExampleView)data;
+		int[] order = new int[view.size()];
+		
+		for( int i = 0; i < order.length; i++ ){
+			order[i] = view.getBaseIndex(i);
+		}
+		
+		return order;
+	}
+	
+	/**
+	 * Get the examples in a list that can be changed, copying them out of the
+	 * original data set's list first if this data set is a split.
+	 * 
+	 * @return the examples
+	 */
+	private List<Example> getWritableData(){
+		if( data instanceof ExampleView ){
+			getLabels();
+			data = new ArrayList<Example>(data);
+		}
+		
+		return data;
+	}
+	
 	/**
 	 * Get the mapping from feature indices to feature names.  This is
 	 * mostly useful when trying to print out the final models.
@@ -107,11 +373,12 @@ public class DataSet {
 	}	
 	
 	/**
-	 * Get the examples associated with this data set
+	 * Get the examples associated with this data set.  For splits, this is a
+	 * read only view onto the examples of the data set that was split.
 	 * 
 	 * @return the examples
 	 */
-	public ArrayList<Example> getData(){
+	public List<Example> getData(){
 		return data;
 	}
 	
@@ -124,13 +391,22 @@ public class DataSet {
 	 * 
 	 * @param addMe
 	 */
-	public void addData(ArrayList<Example> addMe){
+	public void addData(List<Example> addMe){
+		List<Example> writable = getWritableData();
+		
 		for( Example e: addMe ){
-			data.add(e);
+			writable.add(e);
 			labels.add(e.getLabel());
+			
+			if( featureStatistics != null ){
+				featureStatistics.add(e);
+			}
 		}
+		
+		columns = null;
+		clearClassIndex();
 	}
-
+	
 	/**
 	 * Add example e to this data set.
 	 * Note: this does NOT change the feature map for this
@@ -141,8 +417,170 @@ public class DataSet {
 	 * @param addMe
 	 */
 	public void addData(Example e){
-		data.add(e);
+		getWritableData().add(e);
 		labels.add(e.getLabel());
+		columns = null;
+		
+		if( featureStatistics != null ){
+			featureStatistics.add(e);
+		}
+		
+		clearClassIndex();
+	}
+	
+	/**
+	 * Replace the example at index with e, which should have the same label.
+	 * Used by preprocessors that produce new examples rather than changing them in place.
+	 * 
+	 * @param index a position in getData()
+	 * @param e
+	 */
+	void setExample(int index, Example e){
+		getWritableData().set(index, e);
+		columns = null;
+		featureStatistics = null;
+	}
+	
+	/**
+	 * Get the dictionary numbering the labels in this data set.  The class ids are in
+	 * increasing order of label, so if the labels are 0 to k-1 the class ids match them.
+	 * 
+	 * @return the label dictionary
+	 */
+	public LabelDictionary getLabelDictionary(){
+		buildClassIndex();
+		return labelDictionary;
+	}
+	
+	/**
+	 * Get the class id (see getLabelDictionary) of every example in this data set,
+	 * indexed by position in getData().
+	 * 
+	 * @return the class ids, which shouldn't be changed
+	 */
+	public int[] getClassIds(){
+		buildClassIndex();
+		return classIds;
+	}
+	
+	/**
+	 * Get the positions in getData() of all of the examples of one class, in
+	 * increasing order.
+	 * 
+	 * @param classId
+	 * @return the positions, which shouldn't be changed
+	 */
+	public int[] getClassExamples(int classId){
+		buildClassIndex();
+		return classExamples[classId];
+	}
+	
+	/**
+	 * Number the labels and group the examples by class, if that hasn't been done
+	 * since examples were last added.
+	 */
+	private void buildClassIndex(){
+		if( classIds != null ){
+			return;
+		}
+		
+		labelDictionary = new LabelDictionary(getLabels());
+		classIds = new int[data.size()];
+		int[] classSizes = new int[labelDictionary.getNumClasses()];
+		
+		for( int i = 0; i < classIds.length; i++ ){
+			classIds[i] = labelDictionary.getClassId(data.get(i).getLabel());
+			classSizes[classIds[i]]++;
+		}
+		
+		classExamples = new int[classSizes.length][];
+		
+		for( int c = 0; c < classSizes.length; c++ ){
+			classExamples[c] = new int[classSizes[c]];
+			classSizes[c] = 0;
+		}
+		
+		for( int i = 0; i < classIds.length; i++ ){
+			int c = classIds[i];
+			classExamples[c][classSizes[c]] = i;
+			classSizes[c]++;
+		}
+	}
+	
+	private void clearClassIndex(){
+		labelDictionary = null;
+		classIds = null;
+		classExamples = null;
+	}
+	
+	/**
+	 * Get a feature-major (columnar) view of the examples in this data set.  The
+	 * view is built the first time it's requested and then shared until examples
+	 * are added.  Example ids in the view are positions in getData().
+	 * 
+	 * Note: the view is a copy of the feature values, so if the examples are
+	 * changed in place the view will be out of date.
+	 * 
+	 * @return the columns of this data set
+	 */
+	public FeatureColumns getColumns(){
+		if( columns == null ){
+			columns = new FeatureColumns(data, getNumFeatures());
+		}
+		
+		return columns;
+	}
+	
+	/**
+	 * Iterate over the examples in mini-batches of batchSize examples, in order
+	 * 
+	 * @param batchSize
+	 * @return the batches (see BatchIterator)
+	 */
+	public BatchIterator getBatches(int batchSize){
+		return new BatchIterator(data, batchSize);
+	}
+	
+	/**
+	 * Iterate over the examples in mini-batches of batchSize examples, with the
+	 * batches (but not the examples within them) in a random order
+	 * 
+	 * @param batchSize
+	 * @param seed the random seed used to shuffle the batches
+	 * @return the batches (see BatchIterator)
+	 */
+	public BatchIterator getBatches(int batchSize, long seed){
+		return new BatchIterator(data, batchSize, new Random(seed));
+	}
+	
+	/**
+	 * Get the per feature statistics (document frequency, min, max, mean and variance)
+	 * of this data set, collecting them in parallel with a thread per processor.
+	 * 
+	 * @return the statistics
+	 */
+	public FeatureStatistics getFeatureStatistics(){
+		return getFeatureStatistics(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Get the per feature statistics (document frequency, min, max, mean and variance)
+	 * of this data set.  They're collected in a single pass the first time they're
+	 * requested and then kept up to date as examples are added, so they should be
+	 * treated as read only.
+	 * 
+	 * Note: like getColumns, if the examples are changed in place the statistics
+	 * will be out of date.
+	 * 
+	 * @param numThreads the number of threads to collect them with, if they haven't been already
+	 * @return the statistics
+	 */
+	public FeatureStatistics getFeatureStatistics(int numThreads){
+		if( featureStatistics == null ){
+			featureStatistics = FeatureStatistics.collect(data, getNumFeatures(), numThreads);
+		}
+		
+		return featureStatistics;
 	}
 	
 	/**
@@ -155,12 +593,42 @@ public class DataSet {
 		return featureMap.keySet();
 	}
 	
+	/**
+	 * Get the number of features in this data set, i.e. one more than the
+	 * largest feature index.  This is the size needed for an array indexed
+	 * by feature (e.g. a weight vector).  For hashed text data this is the
+	 * number of hash buckets.
+	 * 
+	 * @return the number of features
+	 */
+	public int getNumFeatures(){
+		if( numFeatures >= 0 ){
+			return numFeatures;
+		}
+		
+		int max = -1;
+		
+		for( int featureIndex: featureMap.keySet() ){
+			max = Math.max(max, featureIndex);
+		}
+		
+		return max+1;
+	}
+	
 	/**
 	 * Get all the labels in this data set
 	 * 
 	 * @return the labels
 	 */
 	public Set<Double> getLabels(){
+		if( labels == null ){
+			labels = new HashSet<Double>();
+			
+			for( Example e: data ){
+				labels.add(e.getLabel());
+			}
+		}
+		
 		return labels;
 	}
 	
@@ -169,34 +637,62 @@ public class DataSet {
 	 * - total_size * fraction
 	 * - total_size - (total_size*fraction)
 	 * 
+	 * The two data sets are views onto this data set's examples rather than copies.
+	 * 
 	 * @param fraction the proportion to allocated to the first data set in the split
 	 * @return a split of the data
 	 */
 	public DataSetSplit split(double fraction){
-		ArrayList<Example> newdata = (ArrayList<Example>)data.clone();
-		Collections.shuffle(newdata, new Random(System.nanoTime()));
-		
-		ArrayList<Example> train = new ArrayList<Example>();
-		ArrayList<Example> test = new ArrayList<Example>();
-		
+		return split(fraction, new Random(System.nanoTime()));
+	}
+	
+	/**
+	 * Split this data set as above, shuffling with the given seed so that
+	 * the same seed always gives the same split.
+	 * 
+	 * @param fraction the proportion to allocated to the first data set in the split
+	 * @param seed the random seed
+	 * @return a split of the data
+	 */
+	public DataSetSplit split(double fraction, long seed){
+		return split(fraction, new Random(seed));
+	}
+	
+	private DataSetSplit split(double fraction, Random random){
+		int[] order = getShuffledOrder(random);
 		int trainSize = (int)Math.floor(data.size()*fraction);
 		
-		for( int i = 0; i < newdata.size(); i++ ){
-			if( i < trainSize ){
-				train.add(newdata.get(i));
-			}else{
-				test.add(newdata.get(i));
+		return new DataSetSplit(getView(order, 0, trainSize, false), getView(order, trainSize, order.length, false));
+	}
+	
+	/**
+	 * Get the positions of this data set's examples in the list they're stored
+	 * in (see getBaseOrder) in a random order.
+	 * 
+	 * @param random
+	 * @return the shuffled positions
+	 */
+	int[] getShuffledOrder(Random random){
+		int[] order = getBaseOrder();
+		
+		if( order == null ){
+			order = new int[data.size()];
+			
+			for( int i = 0; i < order.length; i++ ){
+				order[i] = i;
 			}
 		}
 		
-		DataSet dTrain = new DataSet(featureMap);
-		dTrain.addData(train);
+		// the same shuffle as Collections.shuffle
+		for( int i = order.length-1; i > 0; i-- ){
+			int j = random.nextInt(i+1);
+			int temp = order[i];
+			order[i] = order[j];
+			order[j] = temp;
+		}
 		
-		DataSet dTest = new DataSet(featureMap);
-		dTest.addData(test);
-
-		return new DataSetSplit(dTrain, dTest);
-	}	
+		return order;
+	}
 	
 	/**
 	 * Get a cross-validation of this data set with num splits.  The
@@ -220,4 +716,17 @@ public class DataSet {
 	public CrossValidationSet getRandomCrossValidationSet(int num){
 		return new CrossValidationSet(this, num, true);
 	}
+	
+	/**
+	 * Get a cross-validation of this data set with num splits.  The
+	 * data is randomized using seed before splitting, so the same seed
+	 * always gives the same splits.
+	 * 
+	 * @param num
+	 * @param seed the random seed
+	 * @return
+	 */
+	public CrossValidationSet getRandomCrossValidationSet(int num, long seed){
+		return new CrossValidationSet(this, num, seed);
+	}
 }
@@ -0,0 +1,191 @@
+package ml.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Loads data sets, keeping the parsed data sets around so loading the same file again
+ * doesn't parse it again.  Parsed data sets are kept:
+ * 
+ * - in memory, for the most recently used maxEntries files.  They're only softly
+ *   referenced so the garbage collector can still reclaim them if memory runs low.
+ * - optionally on disk, in the binary format (see BinaryDataWriter) in a cache
+ *   directory, so a new JVM can memory map them rather than parsing the file.
+ * 
+ * Both are keyed by a hash of the file's contents (and the file type), so a file
+ * that's changed is parsed again, and copies of the same file share an entry.
+ * 
+ * The data sets returned are views onto the cached data set (like the splits of a
+ * data set), so they can be changed (e.g. preprocessed) without changing the cached
+ * copy, and they only copy the examples if they are changed.
+ */
+public class DataSetCache {
+	private File directory; // null for no disk cache
+	private int maxEntries = 8;
+	
+	// most recently used last
+	private LinkedHashMap<String, SoftReference<DataSet>> memory = new LinkedHashMap<String, SoftReference<DataSet>>(16, 0.75f, true){
+		protected boolean removeEldestEntry(Map.Entry<String, SoftReference<DataSet>> eldest){
+			return size() > maxEntries;
+		}
+	};
+	
+	/**
+	 * Create a cache that only keeps data sets in memory
+	 */
+	public DataSetCache(){
+		this(null);
+	}
+	
+	/**
+	 * Create a cache that keeps data sets in memory and in directory
+	 * 
+	 * @param directory the directory to keep the parsed data sets in, created if
+	 * it doesn't exist, or null to only keep them in memory
+	 */
+	public DataSetCache(String directory){
+		if( directory != null ){
+			this.directory = new File(directory);
+			this.directory.mkdirs();
+		}
+	}
+	
+	/**
+	 * Set the number of data sets to keep in memory
+	 * 
+	 * @param maxEntries
+	 */
+	public synchronized void setMaxEntries(int maxEntries){
+		this.maxEntries = maxEntries;
+	}
+	
+	/**
+	 * Load a data set, from the cache if it's been loaded before
+	 * 
+	 * @param filename the location of the file
+	 * @param fileType what type of file, using the DataSet constants (e.g. DataSet.CSVFILE)
+	 * @return the data set
+	 */
+	public DataSet load(String filename, int fileType){
+		if( fileType == DataSet.BINARYFILE ){
+			// already as fast to load as it gets
+			return new DataSet(filename, fileType);
+		}
+		
+		String key = getKey(filename, fileType);
+		DataSet dataset = getFromMemory(key);
+		
+		if( dataset == null ){
+			dataset = loadFromDisk(key);
+			
+			if( dataset == null ){
+				dataset = new DataSet(filename, fileType);
+				saveToDisk(key, dataset);
+			}
+			
+			synchronized(this){
+				memory.put(key, new SoftReference<DataSet>(dataset));
+			}
+		}
+		
+		return dataset.getView(null, 0, dataset.getData().size(), false);
+	}
+	
+	/**
+	 * Remove all of the data sets from memory (the disk cache is left alone)
+	 */
+	public synchronized void clear(){
+		memory.clear();
+	}
+	
+	private synchronized DataSet getFromMemory(String key){
+		SoftReference<DataSet> reference = memory.get(key);
+		DataSet dataset = reference == null ? null : reference.get();
+		
+		if( reference != null && dataset == null ){
+			// reclaimed by the garbage collector
+			memory.remove(key);
+		}
+		
+		return dataset;
+	}
+	
+	private DataSet loadFromDisk(String key){
+		if( directory == null ){
+			return null;
+		}
+		
+		File file = new File(directory, key + ".bin");
+		
+		if( !file.exists() ){
+			return null;
+		}
+		
+		// pick the same storage loading the original file would have
+		DataSet dataset = new DataSet(file.getPath(), DataSet.BINARYFILE);
+		dataset.setDense(dataset.getDensity() >= DataSet.DENSE_THRESHOLD);
+		return dataset;
+	}
+	
+	private void saveToDisk(String key, DataSet dataset){
+		if( directory == null ){
+			return;
+		}
+		
+		try {
+			// write to a temporary file first so other JVMs never see a partial file
+			File temp = File.createTempFile(key, ".tmp", directory);
+			BinaryDataWriter.write(dataset, temp.getPath());
+			Files.move(temp.toPath(), new File(directory, key + ".bin").toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Get the key for a file: a hash of its contents, the file type and
+	 * the version of the binary format it's cached in
+	 * 
+	 * @param filename
+	 * @param fileType
+	 * @return the key
+	 */
+	private static String getKey(String filename, int fileType){
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			InputStream in = new FileInputStream(filename);
+			
+			try {
+				byte[] buffer = new byte[1 << 16];
+				int read;
+				
+				while( (read = in.read(buffer)) > 0 ){
+					digest.update(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+			}
+			
+			StringBuffer key = new StringBuffer();
+			
+			for( byte b: digest.digest() ){
+				key.append(String.format("%02x", b));
+			}
+			
+			return key.append("-" + fileType + "-v" + BinaryDataWriter.VERSION).toString();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package ml.data;
+
+import java.util.Arrays;
+
+/**
+ * An example that stores every feature value in a plain array indexed by
+ * feature index.  This is more compact and faster than the sparse representation
+ * when most of the features are non-zero (e.g. numerical CSV data).
+ * 
+ * Every feature is stored, so iterating with getNumNonZero/getIndexAt/getValueAt
+ * visits all features, including ones with a zero value.
+ */
+public class DenseExample extends Example {
+	private double[] values;
+	
+	/**
+	 * Create a new example with numFeatures features, all set to 0
+	 * 
+	 * @param numFeatures
+	 */
+	public DenseExample(int numFeatures){
+		super(0);
+		values = new double[numFeatures];
+	}
+	
+	/**
+	 * Create a dense copy of e with numFeatures features
+	 * 
+	 * @param e
+	 * @param numFeatures the number of features in the data set e came from
+	 */
+	public DenseExample(Example e, int numFeatures){
+		this(numFeatures);
+		setLabel(e.getLabel());
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			addFeature(e.getIndexAt(i), e.getValueAt(i));
+		}
+	}
+	
+	public DenseExample(DenseExample e){
+		super(0);
+		setLabel(e.getLabel());
+		values = e.values.clone();
+	}
+	
+	@Override
+	public Example copy(){
+		return new DenseExample(this);
+	}
+	
+	@Override
+	public void addFeature(int featureNum, double value){
+		if( featureNum >= values.length ){
+			values = Arrays.copyOf(values, featureNum+1);
+		}
+		
+		values[featureNum] = value;
+	}
+	
+	@Override
+	public double getFeature(int featureNum){
+		return featureNum < values.length ? values[featureNum] : 0.0;
+	}
+	
+	@Override
+	public void setFeature(int featureNum, double value){
+		addFeature(featureNum, value);
+	}
+	
+	@Override
+	public int getNumNonZero(){
+		return values.length;
+	}
+	
+	@Override
+	public int getIndexAt(int pos){
+		return pos;
+	}
+	
+	@Override
+	public double getValueAt(int pos){
+		return values[pos];
+	}
+}
@@ -0,0 +1,83 @@
+package ml.data;
+
+import java.util.Arrays;
+
+/**
+ * A DenseExample-style example (every feature stored in an array indexed by feature
+ * index) that stores the values as floats, which halves the memory of dense data.
+ * Values are read back as doubles, so computations with them are still done in
+ * double precision.
+ */
+public class DenseFloatExample extends Example {
+	private float[] values;
+	
+	/**
+	 * Create a new example with numFeatures features, all set to 0
+	 * 
+	 * @param numFeatures
+	 */
+	public DenseFloatExample(int numFeatures){
+		super(0);
+		values = new float[numFeatures];
+	}
+	
+	/**
+	 * Create a dense float copy of e with numFeatures features
+	 * 
+	 * @param e
+	 * @param numFeatures the number of features in the data set e came from
+	 */
+	public DenseFloatExample(Example e, int numFeatures){
+		this(numFeatures);
+		setLabel(e.getLabel());
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			addFeature(e.getIndexAt(i), e.getValueAt(i));
+		}
+	}
+	
+	public DenseFloatExample(DenseFloatExample e){
+		super(0);
+		setLabel(e.getLabel());
+		values = e.values.clone();
+	}
+	
+	@Override
+	public Example copy(){
+		return new DenseFloatExample(this);
+	}
+	
+	@Override
+	public void addFeature(int featureNum, double value){
+		if( featureNum >= values.length ){
+			values = Arrays.copyOf(values, featureNum+1);
+		}
+		
+		values[featureNum] = (float)value;
+	}
+	
+	@Override
+	public double getFeature(int featureNum){
+		return featureNum < values.length ? values[featureNum] : 0.0;
+	}
+	
+	@Override
+	public void setFeature(int featureNum, double value){
+		addFeature(featureNum, value);
+	}
+	
+	@Override
+	public int getNumNonZero(){
+		return values.length;
+	}
+	
+	@Override
+	public int getIndexAt(int pos){
+		return pos;
+	}
+	
+	@Override
+	public double getValueAt(int pos){
+		return values[pos];
+	}
+}
@@ -1,7 +1,6 @@
 package ml.data;
 
-import java.util.Collections;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
@@ -16,29 +15,113 @@ public class Example {
 	// Rather than keeping the name of the feature (i.e. the header information), we'll
 	// index the features starting at 0.  The DataSet class will keep a mapping from
 	// feature index to the actual name.
-	private HashMap<Integer, Double> sparseData;
+	//
+	// The features are stored as two parallel arrays sorted by feature index.  Only the
+	// first numNonZero entries are in use, the rest is spare capacity for adding features.
+	private int[] indices;
+	private double[] values;
+	private int numNonZero = 0;
 	private double label;  // the label (assuming it has one)
 	
+	protected static final int INITIAL_CAPACITY = 8;
+	
 	public Example(){
-		sparseData = new HashMap<Integer, Double>();
+		this(INITIAL_CAPACITY);
 	}
 	
 	public Example(Example e){
 		// copy everything
-		label = e.label;
-		sparseData = new HashMap<Integer,Double>(e.sparseData);
+		this(e.getNumNonZero());
+		label = e.getLabel();
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			indices[i] = e.getIndexAt(i);
+			values[i] = e.getValueAt(i);
+		}
+		
+		numNonZero = e.getNumNonZero();
+	}
+	
+	/**
+	 * Create an empty example with room for capacity features before
+	 * the feature arrays need to grow.
+	 * 
+	 * @param capacity
+	 */
+	protected Example(int capacity){
+		indices = new int[capacity];
+		values = new double[capacity];
+	}
+	
+	/**
+	 * Copy this example, keeping the same (sparse or dense) storage.
+	 * 
+	 * @return a copy of this example
+	 */
+	public Example copy(){
+		return new Example(this);
+	}
+	
+	/**
+	 * Create a sparse copy of e that only keeps the features with a non-zero value.
+	 * 
+	 * @param e
+	 * @return the sparse copy
+	 */
+	public static Example sparseCopy(Example e){
+		int count = 0;
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			if( e.getValueAt(i) != 0 ){
+				count++;
+			}
+		}
+		
+		Example copy = new Example(count);
+		copy.setLabel(e.getLabel());
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			if( e.getValueAt(i) != 0 ){
+				copy.addFeature(e.getIndexAt(i), e.getValueAt(i));
+			}
+		}
+		
+		return copy;
 	}
 	
 	/**
 	 * Add a feature with value to this example.
 	 * 
+	 * Adding features in increasing index order (as the readers do) is an append, otherwise
+	 * the feature is inserted into its sorted position.
+	 * 
 	 * @param featureNum  the index of the feature to be added
 	 * @param value  the value to be added
 	 */
 	public void addFeature(int featureNum, double value){
-		sparseData.put(featureNum, value);
+		if( numNonZero == 0 || indices[numNonZero-1] < featureNum ){
+			ensureCapacity(numNonZero+1);
+			indices[numNonZero] = featureNum;
+			setValueAt(numNonZero, value);
+			numNonZero++;
+		}else{
+			int pos = Arrays.binarySearch(indices, 0, numNonZero, featureNum);
+			
+			if( pos >= 0 ){
+				setValueAt(pos, value);
+			}else{
+				// insert at the insertion point, shifting everything after it over by one
+				pos = -(pos+1);
+				ensureCapacity(numNonZero+1);
+				System.arraycopy(indices, pos, indices, pos+1, numNonZero-pos);
+				shiftValues(pos, numNonZero-pos);
+				indices[pos] = featureNum;
+				setValueAt(pos, value);
+				numNonZero++;
+			}
+		}
 	}
-		
+	
 	/**
 	 * Get the value associated with this feature.
 	 * 
@@ -46,7 +129,8 @@ public class Example {
 	 * @return the value for featureNum for this example
 	 */
 	public double getFeature(int featureNum){
-		return sparseData.containsKey(featureNum) ? sparseData.get(featureNum) : 0.0;
+		int pos = Arrays.binarySearch(indices, 0, numNonZero, featureNum);
+		return pos >= 0 ? getValueAt(pos) : 0.0;
 	}
 	
 	/**
@@ -56,16 +140,68 @@ public class Example {
 	 * @param value
 	 */
 	public void setFeature(int featureNum, double value){
-		sparseData.put(featureNum, value);
+		addFeature(featureNum, value);
+	}
+	
+	/**
+	 * Get the number of features stored for this example, i.e. the number of
+	 * positions that can be visited with getIndexAt and getValueAt.  For a sparse
+	 * example these are the non-zero features, for a DenseExample every feature
+	 * is stored.
+	 * 
+	 * Iterating over the features of an example should be done as:
+	 * 
+	 * for( int i = 0; i < e.getNumNonZero(); i++ ){
+	 *    int featureIndex = e.getIndexAt(i);
+	 *    double value = e.getValueAt(i);
+	 *    ...
+	 * }
+	 * 
+	 * which, unlike getFeatureSet, doesn't allocate anything.
+	 * 
+	 * @return the number of stored features
+	 */
+	public int getNumNonZero(){
+		return numNonZero;
+	}
+	
+	/**
+	 * Get the feature index stored at position pos.  Positions are in
+	 * increasing order of feature index.
+	 * 
+	 * @param pos position between 0 and getNumNonZero()-1
+	 * @return the feature index at that position
+	 */
+	public int getIndexAt(int pos){
+		return indices[pos];
+	}
+	
+	/**
+	 * Get the feature value stored at position pos.
+	 * 
+	 * @param pos position between 0 and getNumNonZero()-1
+	 * @return the feature value at that position
+	 */
+	public double getValueAt(int pos){
+		return values[pos];
 	}
 	
 	/**
 	 * Get all the features that this example has (indices).
 	 * 
+	 * Note: this builds a new set on every call.  Use getNumNonZero/getIndexAt/getValueAt
+	 * for iterating over the features.
+	 * 
 	 * @return the set of features
 	 */
 	public Set<Integer> getFeatureSet(){
-		return sparseData.keySet();
+		HashSet<Integer> features = new HashSet<Integer>();
+		
+		for( int i = 0; i < getNumNonZero(); i++ ){
+			features.add(getIndexAt(i));
+		}
+		
+		return features;
 	}
 	
 	/**
@@ -93,18 +229,26 @@ public class Example {
 	 * @return whether or not these examples have the same feature values
 	 */
 	public boolean equalFeatures(Example other){
-		return sparseData.equals(other.sparseData);
+		if( getNumNonZero() != other.getNumNonZero() ){
+			return false;
+		}
+		
+		for( int i = 0; i < getNumNonZero(); i++ ){
+			if( getIndexAt(i) != other.getIndexAt(i) ||
+				getValueAt(i) != other.getValueAt(i) ){
+				return false;
+			}
+		}
+		
+		return true;
 	}
 	
 	public String toString(){
 		StringBuffer buffer = new StringBuffer();
 		buffer.append(label);
 		
-		ArrayList<Integer> indices = new ArrayList<Integer>(sparseData.keySet());
-		Collections.sort(indices);
-		
-		for( int featureIndex: indices){
-			buffer.append(" " + featureIndex + ":" + valueToString(sparseData.get(featureIndex)));
+		for( int i = 0; i < getNumNonZero(); i++ ){
+			buffer.append(" " + getIndexAt(i) + ":" + valueToString(getValueAt(i)));
 		}
 		
 		return buffer.toString();
@@ -114,29 +258,30 @@ public class Example {
 		StringBuffer buffer = new StringBuffer();
 		buffer.append(label);
 		
-		ArrayList<Integer> indices = new ArrayList<Integer>(sparseData.keySet());
-		Collections.sort(indices);
-		
-		for( int featureIndex: indices){
-			buffer.append(" " + featureMap.get(featureIndex) + ":" + valueToString(sparseData.get(featureIndex)));
+		for( int i = 0; i < getNumNonZero(); i++ ){
+			buffer.append(" " + featureMap.get(getIndexAt(i)) + ":" + valueToString(getValueAt(i)));
 		}
 		
 		return buffer.toString();
 	}
-
+	
 	/**
-	 * CSV representation of this example
+	 * CSV representation of this example.  Features that aren't stored are
+	 * written out as 0.
 	 * 
 	 * @return csv representation
 	 */
 	public String toCSVString(){
 		StringBuffer buffer = new StringBuffer();
+		int next = 0; // the next feature index to be written
 		
-		ArrayList<Integer> indices = new ArrayList<Integer>(sparseData.keySet());
-		Collections.sort(indices);
-		
-		for( int featureIndex: indices){
-			buffer.append(valueToString(sparseData.get(featureIndex)) + ",");
+		for( int i = 0; i < getNumNonZero(); i++ ){
+			for( ; next < getIndexAt(i); next++ ){
+				buffer.append("0,");
+			}
+			
+			buffer.append(valueToString(getValueAt(i)) + ",");
+			next++;
 		}
 		
 		buffer.append( valueToString(label) );
@@ -144,6 +289,53 @@ public class Example {
 		return buffer.toString();
 	}
 	
+	/**
+	 * Make sure there is room for at least capacity features
+	 * 
+	 * @param capacity
+	 */
+	protected void ensureCapacity(int capacity){
+		if( capacity > indices.length ){
+			int newCapacity = Math.max(Math.max(capacity, indices.length*2), INITIAL_CAPACITY);
+			indices = Arrays.copyOf(indices, newCapacity);
+			resizeValues(newCapacity);
+		}
+	}
+	
+	// The feature values are only accessed through the following methods (and getValueAt),
+	// so a subclass can store them differently (e.g. as floats, see FloatExample) and
+	// still share the sorted insertion above.
+	
+	/**
+	 * Set the value stored at position pos.
+	 * 
+	 * @param pos
+	 * @param value
+	 */
+	protected void setValueAt(int pos, double value){
+		values[pos] = value;
+	}
+	
+	/**
+	 * Move the count values from position pos on over by one, to make room for
+	 * a value at pos (there is room for it, see ensureCapacity)
+	 * 
+	 * @param pos
+	 * @param count
+	 */
+	protected void shiftValues(int pos, int count){
+		System.arraycopy(values, pos, values, pos+1, count);
+	}
+	
+	/**
+	 * Change the room for values to capacity, keeping the values stored
+	 * 
+	 * @param capacity
+	 */
+	protected void resizeValues(int capacity){
+		values = Arrays.copyOf(values, capacity);
+	}
+	
 	/**
 	 * Helper function to output integers as integer strings instead of as doubles
 	 * 
@@ -0,0 +1,132 @@
+package ml.data;
+
+import java.util.Arrays;
+
+/**
+ * A mini-batch of examples stored as a CSR (compressed sparse row) block: the feature
+ * indices and values of all of the examples one after another in two arrays, with
+ * rowStarts[r] the position of example r's first feature (and rowStarts[getNumRows()]
+ * the end of the last one).  Going through a batch is a walk over a few contiguous
+ * arrays rather than over separate example objects.
+ * 
+ * See DataSet.getBatches.
+ */
+public class ExampleBatch {
+	private int numRows = 0;
+	private int[] rowStarts;
+	private int[] indices;
+	private double[] values;
+	private double[] labels;
+	
+	/**
+	 * Create an empty batch with room for batchSize examples
+	 * 
+	 * @param batchSize
+	 */
+	public ExampleBatch(int batchSize){
+		rowStarts = new int[batchSize+1];
+		labels = new double[batchSize];
+		indices = new int[Example.INITIAL_CAPACITY*batchSize];
+		values = new double[indices.length];
+	}
+	
+	/**
+	 * Remove all of the examples from this batch, keeping the arrays to reuse
+	 */
+	public void clear(){
+		numRows = 0;
+	}
+	
+	/**
+	 * Add e to the end of this batch
+	 * 
+	 * @param e
+	 */
+	public void add(Example e){
+		if( numRows == labels.length ){
+			int capacity = 2*labels.length;
+			labels = Arrays.copyOf(labels, capacity);
+			rowStarts = Arrays.copyOf(rowStarts, capacity+1);
+		}
+		
+		int start = rowStarts[numRows];
+		int end = start + e.getNumNonZero();
+		
+		if( end > indices.length ){
+			int capacity = Math.max(end, 2*indices.length);
+			indices = Arrays.copyOf(indices, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			indices[start+i] = e.getIndexAt(i);
+			values[start+i] = e.getValueAt(i);
+		}
+		
+		labels[numRows] = e.getLabel();
+		numRows++;
+		rowStarts[numRows] = end;
+	}
+	
+	/**
+	 * @return the number of examples in this batch
+	 */
+	public int getNumRows(){
+		return numRows;
+	}
+	
+	/**
+	 * @return the position of each example's first feature in getIndices() and
+	 * getValues(), indexed by row (with one extra entry for the end of the last row)
+	 */
+	public int[] getRowStarts(){
+		return rowStarts;
+	}
+	
+	/**
+	 * @return the feature indices of all of the examples, in increasing order within a row
+	 */
+	public int[] getIndices(){
+		return indices;
+	}
+	
+	/**
+	 * @return the feature values of all of the examples
+	 */
+	public double[] getValues(){
+		return values;
+	}
+	
+	/**
+	 * @return the label of each example, indexed by row
+	 */
+	public double[] getLabels(){
+		return labels;
+	}
+	
+	/**
+	 * Compute the dot product of every example in this batch with weights, e.g. to
+	 * score the whole batch with a linear model.  Features past the end of weights
+	 * are treated as having weight 0.
+	 * 
+	 * @param weights
+	 * @param scores where the dot products go, indexed by row (at least getNumRows() long)
+	 */
+	public void dot(double[] weights, double[] scores){
+		for( int r = 0; r < numRows; r++ ){
+			double sum = 0;
+			
+			for( int i = rowStarts[r]; i < rowStarts[r+1]; i++ ){
+				int featureIndex = indices[i];
+				
+				if( featureIndex >= weights.length ){
+					break;
+				}
+				
+				sum += weights[featureIndex]*values[i];
+			}
+			
+			scores[r] = sum;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package ml.data;
+
+import java.util.Iterator;
+
+/**
+ * A source of examples that can be read through more than once, e.g. a file.  This lets
+ * classifiers train over data that's too big to load into a DataSet by reading through
+ * the source once per iteration (see StreamingClassifier).
+ */
+public interface ExampleSource {
+	/**
+	 * Start reading the examples from the beginning.  Each call should give the same
+	 * examples in the same order with the same feature indices.
+	 * 
+	 * @return an iterator over all of the examples
+	 */
+	public Iterator<Example> open();
+}
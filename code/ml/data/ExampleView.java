@@ -0,0 +1,68 @@
+package ml.data;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A read only list of examples that's a view onto another list of examples rather
+ * than a copy of it.  The view is the examples at positions begin to end of an order
+ * (a permutation of positions in the other list) or, if complement is set, all of
+ * the examples in the order except those.  This is what the splits of a data set
+ * are made of, so all of the splits of a data set share its examples and a single
+ * order instead of each having their own lists.
+ */
+class ExampleView extends AbstractList<Example> implements RandomAccess {
+	private List<Example> base; // the list being viewed
+	private int[] order; // positions in base, null for base's own order
+	private int orderSize; // fixed when the view is made, so adding to base doesn't change the view
+	private int begin;
+	private int end;
+	private boolean complement;
+	
+	/**
+	 * @param base the list being viewed, this should not be a view itself
+	 * @param order positions in base, or null for the order of base
+	 * @param begin the first position in order in the view
+	 * @param end one past the last position in order in the view
+	 * @param complement if true, the view is everything in order except begin to end
+	 */
+	public ExampleView(List<Example> base, int[] order, int begin, int end, boolean complement){
+		this.base = base;
+		this.order = order;
+		this.orderSize = order == null ? base.size() : order.length;
+		this.begin = begin;
+		this.end = end;
+		this.complement = complement;
+	}
+	
+	@Override
+	public Example get(int index){
+		return base.get(getBaseIndex(index));
+	}
+	
+	@Override
+	public int size(){
+		return complement ? orderSize - (end-begin) : end-begin;
+	}
+	
+	/**
+	 * @return the list being viewed
+	 */
+	public List<Example> getBase(){
+		return base;
+	}
+	
+	/**
+	 * @param index a position in this view
+	 * @return the position in the base list of the example at index
+	 */
+	public int getBaseIndex(int index){
+		if( index < 0 || index >= size() ){
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		
+		int pos = complement ? (index < begin ? index : index + end - begin) : begin + index;
+		return order == null ? pos : order[pos];
+	}
+}
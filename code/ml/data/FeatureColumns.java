@@ -0,0 +1,134 @@
+package ml.data;
+
+import java.util.List;
+
+/**
+ * A feature-major (columnar) view of the examples in a data set, stored in
+ * compressed sparse column form.  For each feature there is a posting list of
+ * the examples with a non-zero value for that feature and those values, ordered
+ * by example id (the position of the example in DataSet.getData()).
+ * 
+ * Scanning all of the examples for one feature is then a sequential walk over
+ * two arrays:
+ * 
+ * for( int pos = columns.getColumnStart(f); pos < columns.getColumnEnd(f); pos++ ){
+ *    int exampleId = columns.getExampleAt(pos);
+ *    double value = columns.getValueAt(pos);
+ *    ...
+ * }
+ * 
+ * Examples that aren't in a feature's posting list have a value of 0 for it.
+ */
+public class FeatureColumns {
+	private int numExamples;
+	private int[] columnStarts; // where each feature's postings start, numFeatures+1 entries
+	private int[] exampleIds;
+	private double[] values;
+	
+	/**
+	 * Build the columns for the examples with numFeatures features
+	 * 
+	 * @param data the examples
+	 * @param numFeatures the number of features in the data set
+	 */
+	public FeatureColumns(List<Example> data, int numFeatures){
+		numExamples = data.size();
+		columnStarts = new int[numFeatures+1];
+		
+		// first pass: count the non-zeros for each feature
+		for( Example e: data ){
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				if( e.getValueAt(i) != 0 ){
+					columnStarts[e.getIndexAt(i)+1]++;
+				}
+			}
+		}
+		
+		for( int f = 0; f < numFeatures; f++ ){
+			columnStarts[f+1] += columnStarts[f];
+		}
+		
+		// second pass: fill in the postings.  Going through the examples in
+		// order keeps each posting list sorted by example id.
+		exampleIds = new int[columnStarts[numFeatures]];
+		values = new double[columnStarts[numFeatures]];
+		int[] next = new int[numFeatures];
+		System.arraycopy(columnStarts, 0, next, 0, numFeatures);
+		
+		for( int id = 0; id < data.size(); id++ ){
+			Example e = data.get(id);
+			
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				if( e.getValueAt(i) != 0 ){
+					int pos = next[e.getIndexAt(i)]++;
+					exampleIds[pos] = id;
+					values[pos] = e.getValueAt(i);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of features (columns)
+	 */
+	public int getNumFeatures(){
+		return columnStarts.length-1;
+	}
+	
+	/**
+	 * @return the number of examples (rows)
+	 */
+	public int getNumExamples(){
+		return numExamples;
+	}
+	
+	/**
+	 * Get the position of the first posting for feature
+	 * 
+	 * @param feature
+	 * @return the start position (inclusive)
+	 */
+	public int getColumnStart(int feature){
+		return columnStarts[feature];
+	}
+	
+	/**
+	 * Get the position just past the last posting for feature
+	 * 
+	 * @param feature
+	 * @return the end position (exclusive)
+	 */
+	public int getColumnEnd(int feature){
+		return columnStarts[feature+1];
+	}
+	
+	/**
+	 * Get the number of examples with a non-zero value for feature
+	 * 
+	 * @param feature
+	 * @return the number of non-zeros in the column
+	 */
+	public int getColumnSize(int feature){
+		return columnStarts[feature+1] - columnStarts[feature];
+	}
+	
+	/**
+	 * Get the example id of the posting at position pos
+	 * 
+	 * @param pos
+	 * @return the example id (index into DataSet.getData())
+	 */
+	public int getExampleAt(int pos){
+		return exampleIds[pos];
+	}
+	
+	/**
+	 * Get the feature value of the posting at position pos
+	 * 
+	 * @param pos
+	 * @return the (non-zero) feature value
+	 */
+	public double getValueAt(int pos){
+		return values[pos];
+	}
+}
@@ -0,0 +1,153 @@
+package ml.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Maps words to a fixed number of features (2^bits) with the hashing trick, rather than
+ * giving every word its own feature.  This caps the number of features, and so the size
+ * of the data and of the learned models, no matter how many different words there are.
+ * 
+ * Each word also gets a sign (+1 or -1) from its hash that its value is multiplied by, so
+ * that words colliding in the same feature tend to cancel out rather than add up.
+ * 
+ * Since words can't be recovered from their hash, the hasher can optionally keep a few of
+ * the words it's seen for each feature, which is handy for looking at learned models.
+ */
+public class FeatureHasher {
+	private int bits;
+	private int mask;
+	
+	private BitSet used = new BitSet(); // which features have been seen
+	private int samplesPerFeature; // how many words to remember for each feature
+	private HashMap<Integer, ArrayList<String>> samples = new HashMap<Integer, ArrayList<String>>();
+	
+	/**
+	 * Create a new hasher that doesn't remember any words
+	 * 
+	 * @param bits the number of features will be 2^bits
+	 */
+	public FeatureHasher(int bits){
+		this(bits, 0);
+	}
+	
+	/**
+	 * Create a new hasher
+	 * 
+	 * @param bits the number of features will be 2^bits
+	 * @param samplesPerFeature the number of words to remember for each feature
+	 */
+	public FeatureHasher(int bits, int samplesPerFeature){
+		if( bits < 1 || bits > 30 ){
+			throw new IllegalArgumentException("bits must be between 1 and 30: " + bits);
+		}
+		
+		this.bits = bits;
+		this.mask = (1 << bits) - 1;
+		this.samplesPerFeature = samplesPerFeature;
+	}
+	
+	/**
+	 * @return the number of features words are hashed into (2^bits)
+	 */
+	public int getNumFeatures(){
+		return 1 << bits;
+	}
+	
+	/**
+	 * Get the feature index for word
+	 * 
+	 * @param word
+	 * @return the feature index, between 0 and getNumFeatures()-1
+	 */
+	public int getIndex(String word){
+		return (int)(hash(word) & mask);
+	}
+	
+	/**
+	 * Get the sign that word's value should be multiplied by
+	 * 
+	 * @param word
+	 * @return 1.0 or -1.0
+	 */
+	public double getSign(String word){
+		return hash(word) < 0 ? -1.0 : 1.0;
+	}
+	
+	/**
+	 * Record that word was hashed into its feature.  This keeps track of which features
+	 * are in use and, if the hasher remembers words, adds word to the feature's samples.
+	 * 
+	 * @param word
+	 */
+	public void record(String word){
+		int index = getIndex(word);
+		used.set(index);
+		
+		if( samplesPerFeature > 0 ){
+			ArrayList<String> words = samples.get(index);
+			
+			if( words == null ){
+				words = new ArrayList<String>();
+				samples.put(index, words);
+			}
+			
+			if( words.size() < samplesPerFeature && !words.contains(word) ){
+				words.add(word);
+			}
+		}
+	}
+	
+	/**
+	 * Get a feature map for all of the features that have been recorded.  Features are
+	 * named by the words remembered for them (separated by |) or, if no words are
+	 * remembered, by their index.
+	 * 
+	 * @return feature map
+	 */
+	public HashMap<Integer, String> getFeatureMap(){
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		
+		for( int index = used.nextSetBit(0); index >= 0; index = used.nextSetBit(index+1) ){
+			ArrayList<String> words = samples.get(index);
+			
+			if( words == null ){
+				featureMap.put(index, "#" + index);
+			}else{
+				StringBuffer buffer = new StringBuffer();
+				
+				for( String word: words ){
+					buffer.append(buffer.length() == 0 ? word : "|" + word);
+				}
+				
+				featureMap.put(index, buffer.toString());
+			}
+		}
+		
+		return featureMap;
+	}
+	
+	/**
+	 * A 64 bit hash of word (FNV-1a followed by the MurmurHash3 finalizer to mix the bits).
+	 * Unlike String.hashCode this spreads short words well over all of the bits.
+	 * 
+	 * @param word
+	 * @return the hash
+	 */
+	private static long hash(String word){
+		long h = 0xcbf29ce484222325L;
+		
+		for( int i = 0; i < word.length(); i++ ){
+			h ^= word.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
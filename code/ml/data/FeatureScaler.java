@@ -0,0 +1,40 @@
+package ml.data;
+
+/**
+ * A PreprocessingStage that centers each feature (subtracts its mean) and/or scales it
+ * to have standard deviation 1.  Centering makes the zero features non-zero, so it
+ * makes sparse data dense; for sparse data (e.g. text) usually only scaling is used.
+ */
+public class FeatureScaler implements PreprocessingStage {
+	private boolean center;
+	private boolean scale;
+	
+	/**
+	 * @param center whether to subtract each feature's mean
+	 * @param scale whether to divide each feature by its standard deviation
+	 */
+	public FeatureScaler(boolean center, boolean scale){
+		this.center = center;
+		this.scale = scale;
+	}
+	
+	@Override
+	public void fit(FeatureStatistics stats, FeatureTransform transform){
+		for( int j = 0; j < stats.getNumFeatures(); j++ ){
+			if( !transform.isKept(j) ){
+				continue;
+			}
+			
+			if( center ){
+				transform.shift(j, -stats.getMean(j));
+			}
+			
+			double std = stats.getStandardDeviation(j);
+			
+			// constant features are left alone (other than centering)
+			if( scale && std > 0 ){
+				transform.scale(j, 1.0/std);
+			}
+		}
+	}
+}
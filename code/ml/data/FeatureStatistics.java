@@ -0,0 +1,316 @@
+package ml.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Per feature statistics of a data set: how many examples each feature is non-zero in
+ * (its document frequency) and its minimum, maximum, mean and variance.  A DataSet
+ * collects these once and keeps them up to date as examples are added (see
+ * DataSet.getFeatureStatistics), so anything that needs them doesn't have to scan
+ * the data again.
+ * 
+ * The statistics can also describe the data as it would be after a FeatureTransform
+ * (see forTransform), which works because the transforms of the features (scaling,
+ * shifting and removing them) are all linear.  This is how the stages of a
+ * PreprocessingPipeline all learn from the one set of statistics.
+ */
+public class FeatureStatistics {
+	private int numExamples = 0;
+	private int[] documentFrequency; // number of examples with a non-zero value
+	private double[] sum;
+	private double[] sumSquares;
+	private double[] min; // of the non-zero values
+	private double[] max; // of the non-zero values
+	private FeatureTransform transform = null; // null for the statistics of the data itself
+	
+	/**
+	 * Create empty statistics (i.e. for no examples)
+	 * 
+	 * @param numFeatures the number of features to make room for
+	 */
+	public FeatureStatistics(int numFeatures){
+		documentFrequency = new int[numFeatures];
+		sum = new double[numFeatures];
+		sumSquares = new double[numFeatures];
+		min = new double[numFeatures];
+		max = new double[numFeatures];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+	}
+	
+	private FeatureStatistics(FeatureStatistics other, FeatureTransform transform){
+		numExamples = other.numExamples;
+		documentFrequency = other.documentFrequency;
+		sum = other.sum;
+		sumSquares = other.sumSquares;
+		min = other.min;
+		max = other.max;
+		this.transform = transform;
+	}
+	
+	/**
+	 * Collect the statistics of examples, with each thread collecting them for a contiguous
+	 * chunk of the examples.  The chunks are added up in order, so the result doesn't depend
+	 * on how the threads are scheduled.
+	 * 
+	 * @param examples
+	 * @param numFeatures the number of features to make room for
+	 * @param numThreads
+	 * @return the statistics
+	 */
+	public static FeatureStatistics collect(final List<Example> examples, final int numFeatures, int numThreads){
+		int numChunks = Math.max(1, Math.min(numThreads, examples.size()));
+		
+		if( numChunks == 1 ){
+			FeatureStatistics stats = new FeatureStatistics(numFeatures);
+			
+			for( Example e: examples ){
+				stats.add(e);
+			}
+			
+			return stats;
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(numChunks);
+		
+		try {
+			ArrayList<Future<FeatureStatistics>> partials = new ArrayList<Future<FeatureStatistics>>();
+			
+			for( int i = 0; i < numChunks; i++ ){
+				final int begin = (int)((long)examples.size()*i/numChunks);
+				final int end = (int)((long)examples.size()*(i+1)/numChunks);
+				
+				partials.add(pool.submit(new Callable<FeatureStatistics>(){
+					public FeatureStatistics call(){
+						FeatureStatistics partial = new FeatureStatistics(numFeatures);
+						
+						for( int j = begin; j < end; j++ ){
+							partial.add(examples.get(j));
+						}
+						
+						return partial;
+					}
+				}));
+			}
+			
+			FeatureStatistics total = new FeatureStatistics(numFeatures);
+			
+			for( Future<FeatureStatistics> partial: partials ){
+				total.add(partial.get());
+			}
+			
+			return total;
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Add example e to the statistics
+	 * 
+	 * @param e
+	 */
+	public void add(Example e){
+		checkNotTransformed();
+		numExamples++;
+		
+		for( int i = 0; i < e.getNumNonZero(); i++ ){
+			int featureIndex = e.getIndexAt(i);
+			double value = e.getValueAt(i);
+			
+			if( value != 0 ){
+				if( featureIndex >= sum.length ){
+					grow(featureIndex+1);
+				}
+				
+				documentFrequency[featureIndex]++;
+				sum[featureIndex] += value;
+				sumSquares[featureIndex] += value*value;
+				min[featureIndex] = Math.min(min[featureIndex], value);
+				max[featureIndex] = Math.max(max[featureIndex], value);
+			}
+		}
+	}
+	
+	/**
+	 * Add the statistics of other's examples to these
+	 * 
+	 * @param other
+	 */
+	public void add(FeatureStatistics other){
+		checkNotTransformed();
+		other.checkNotTransformed();
+		
+		if( other.sum.length > sum.length ){
+			grow(other.sum.length);
+		}
+		
+		numExamples += other.numExamples;
+		
+		for( int j = 0; j < other.sum.length; j++ ){
+			documentFrequency[j] += other.documentFrequency[j];
+			sum[j] += other.sum[j];
+			sumSquares[j] += other.sumSquares[j];
+			min[j] = Math.min(min[j], other.min[j]);
+			max[j] = Math.max(max[j], other.max[j]);
+		}
+	}
+	
+	private void grow(int numFeatures){
+		int oldSize = sum.length;
+		numFeatures = Math.max(numFeatures, 2*oldSize);
+		documentFrequency = Arrays.copyOf(documentFrequency, numFeatures);
+		sum = Arrays.copyOf(sum, numFeatures);
+		sumSquares = Arrays.copyOf(sumSquares, numFeatures);
+		min = Arrays.copyOf(min, numFeatures);
+		max = Arrays.copyOf(max, numFeatures);
+		Arrays.fill(min, oldSize, numFeatures, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, oldSize, numFeatures, Double.NEGATIVE_INFINITY);
+	}
+	
+	private void checkNotTransformed(){
+		if( transform != null ){
+			throw new RuntimeException("Examples can't be added to transformed statistics");
+		}
+	}
+	
+	/**
+	 * Get the statistics of the same data after transform.  These share the
+	 * underlying statistics, so they're only valid until more examples are added.
+	 * 
+	 * @param transform
+	 * @return the statistics of the data after transform
+	 */
+	public FeatureStatistics forTransform(FeatureTransform transform){
+		checkNotTransformed();
+		return new FeatureStatistics(this, transform);
+	}
+	
+	/**
+	 * @return the number of examples
+	 */
+	public int getNumExamples(){
+		return numExamples;
+	}
+	
+	/**
+	 * @return the number of features there are statistics for, features
+	 * past this haven't been seen
+	 */
+	public int getNumFeatures(){
+		return transform == null ? sum.length : Math.min(sum.length, transform.getNumFeatures());
+	}
+	
+	private boolean isKept(int featureIndex){
+		return featureIndex < getNumFeatures() && (transform == null || transform.isKept(featureIndex));
+	}
+	
+	private double getScale(int featureIndex){
+		return transform == null ? 1.0 : transform.getScale(featureIndex);
+	}
+	
+	private double getShift(int featureIndex){
+		return transform == null ? 0.0 : transform.getShift(featureIndex);
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @return the number of examples featureIndex is non-zero in
+	 */
+	public int getDocumentFrequency(int featureIndex){
+		if( !isKept(featureIndex) ){
+			return 0;
+		}
+		
+		// a shifted feature is non-zero pretty much everywhere
+		return getShift(featureIndex) != 0 ? numExamples : documentFrequency[featureIndex];
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @return the smallest value of featureIndex, including the zeros of the
+	 * examples it doesn't occur in
+	 */
+	public double getMin(int featureIndex){
+		if( !isKept(featureIndex) || numExamples == 0 ){
+			return 0.0;
+		}
+		
+		double low = getRawMin(featureIndex);
+		double high = getRawMax(featureIndex);
+		double scale = getScale(featureIndex);
+		return (scale >= 0 ? scale*low : scale*high) + getShift(featureIndex);
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @return the largest value of featureIndex, including the zeros of the
+	 * examples it doesn't occur in
+	 */
+	public double getMax(int featureIndex){
+		if( !isKept(featureIndex) || numExamples == 0 ){
+			return 0.0;
+		}
+		
+		double low = getRawMin(featureIndex);
+		double high = getRawMax(featureIndex);
+		double scale = getScale(featureIndex);
+		return (scale >= 0 ? scale*high : scale*low) + getShift(featureIndex);
+	}
+	
+	private double getRawMin(int featureIndex){
+		int df = documentFrequency[featureIndex];
+		return df == 0 ? 0.0 : (df < numExamples ? Math.min(min[featureIndex], 0.0) : min[featureIndex]);
+	}
+	
+	private double getRawMax(int featureIndex){
+		int df = documentFrequency[featureIndex];
+		return df == 0 ? 0.0 : (df < numExamples ? Math.max(max[featureIndex], 0.0) : max[featureIndex]);
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @return the mean value of featureIndex
+	 */
+	public double getMean(int featureIndex){
+		if( !isKept(featureIndex) || numExamples == 0 ){
+			return 0.0;
+		}
+		
+		return getScale(featureIndex)*sum[featureIndex]/numExamples + getShift(featureIndex);
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @return the (population) variance of featureIndex
+	 */
+	public double getVariance(int featureIndex){
+		if( !isKept(featureIndex) || numExamples == 0 ){
+			return 0.0;
+		}
+		
+		double mean = sum[featureIndex]/numExamples;
+		double variance = Math.max(sumSquares[featureIndex]/numExamples - mean*mean, 0.0);
+		double scale = getScale(featureIndex);
+		return scale*scale*variance;
+	}
+	
+	/**
+	 * @param featureIndex
+	 * @return the standard deviation of featureIndex
+	 */
+	public double getStandardDeviation(int featureIndex){
+		return Math.sqrt(getVariance(featureIndex));
+	}
+}
@@ -0,0 +1,191 @@
+package ml.data;
+
+import java.util.Arrays;
+
+/**
+ * The combined transform of the stages of a PreprocessingPipeline.  Each feature value v
+ * is mapped to scale*v + shift (or removed) and then, optionally, each example is
+ * normalized to length 1.  Applying it to an example is a single pass over the
+ * example's features however many stages went into it.
+ */
+public class FeatureTransform {
+	private double[] scale;
+	private double[] shift;
+	private boolean[] kept;
+	private boolean shifted = false; // whether any feature has a shift, which makes the examples dense
+	private boolean normalize = false;
+	
+	/**
+	 * Create the identity transform over numFeatures features
+	 * 
+	 * @param numFeatures
+	 */
+	public FeatureTransform(int numFeatures){
+		scale = new double[numFeatures];
+		shift = new double[numFeatures];
+		kept = new boolean[numFeatures];
+		Arrays.fill(scale, 1.0);
+		Arrays.fill(kept, true);
+	}
+	
+	/**
+	 * @param other
+	 */
+	public FeatureTransform(FeatureTransform other){
+		scale = other.scale.clone();
+		shift = other.shift.clone();
+		kept = other.kept.clone();
+		shifted = other.shifted;
+		normalize = other.normalize;
+	}
+	
+	/**
+	 * @return the number of features, features past this are dropped
+	 */
+	public int getNumFeatures(){
+		return scale.length;
+	}
+	
+	public double getScale(int featureIndex){
+		return scale[featureIndex];
+	}
+	
+	public double getShift(int featureIndex){
+		return shift[featureIndex];
+	}
+	
+	public boolean isKept(int featureIndex){
+		return kept[featureIndex];
+	}
+	
+	/**
+	 * Multiply featureIndex by s after the current transform
+	 * 
+	 * @param featureIndex
+	 * @param s
+	 */
+	public void scale(int featureIndex, double s){
+		checkNotNormalized();
+		scale[featureIndex] *= s;
+		shift[featureIndex] *= s;
+	}
+	
+	/**
+	 * Add t to featureIndex after the current transform
+	 * 
+	 * @param featureIndex
+	 * @param t
+	 */
+	public void shift(int featureIndex, double t){
+		checkNotNormalized();
+		shift[featureIndex] += t;
+		shifted |= shift[featureIndex] != 0;
+	}
+	
+	/**
+	 * Remove featureIndex from the examples
+	 * 
+	 * @param featureIndex
+	 */
+	public void remove(int featureIndex){
+		kept[featureIndex] = false;
+	}
+	
+	/**
+	 * Normalize each example to have length 1 after the per feature transforms.
+	 * Since this depends on the whole example, it has to be the last stage.
+	 */
+	public void normalizeRows(){
+		normalize = true;
+	}
+	
+	private void checkNotNormalized(){
+		if( normalize ){
+			throw new RuntimeException("Features can't be transformed after the rows are normalized");
+		}
+	}
+	
+	/**
+	 * Apply this transform to e.  Features that have a shift make the result dense
+	 * (all of the zero features get the shift), otherwise it's sparse.
+	 * 
+	 * @param e
+	 * @return the transformed copy of e
+	 */
+	public Example apply(Example e){
+		int numFeatures = scale.length;
+		int[] indices;
+		double[] values;
+		int size = 0;
+		
+		if( shifted ){
+			// every feature is output, in order
+			indices = new int[numFeatures];
+			values = new double[numFeatures];
+			
+			for( int j = 0; j < numFeatures; j++ ){
+				indices[j] = j;
+				values[j] = kept[j] ? shift[j] : 0.0;
+			}
+			
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				int j = e.getIndexAt(i);
+				
+				if( j < numFeatures && kept[j] ){
+					values[j] = scale[j]*e.getValueAt(i) + shift[j];
+				}
+			}
+			
+			size = numFeatures;
+		}else{
+			indices = new int[e.getNumNonZero()];
+			values = new double[e.getNumNonZero()];
+			
+			for( int i = 0; i < e.getNumNonZero(); i++ ){
+				int j = e.getIndexAt(i);
+				
+				if( j < numFeatures && kept[j] ){
+					double value = scale[j]*e.getValueAt(i);
+					
+					if( value != 0 ){
+						indices[size] = j;
+						values[size] = value;
+						size++;
+					}
+				}
+			}
+		}
+		
+		if( normalize ){
+			double length = 0;
+			
+			for( int i = 0; i < size; i++ ){
+				length += values[i]*values[i];
+			}
+			
+			length = Math.sqrt(length);
+			
+			if( length > 0 ){
+				for( int i = 0; i < size; i++ ){
+					values[i] /= length;
+				}
+			}
+		}
+		
+		Example result = shifted ? new DenseExample(numFeatures) : new Example();
+		result.setLabel(e.getLabel());
+		
+		for( int i = 0; i < size; i++ ){
+			result.addFeature(indices[i], values[i]);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return whether applying this transform makes the examples dense
+	 */
+	public boolean isShifted(){
+		return shifted;
+	}
+}
@@ -0,0 +1,53 @@
+package ml.data;
+
+import java.util.Iterator;
+
+/**
+ * An ExampleSource that reads the examples from a file each time it's opened,
+ * so only the examples currently being used need to be in memory.
+ */
+public class FileExampleSource implements ExampleSource {
+	private String filename;
+	private int fileType;
+	private FeatureHasher hasher = null;
+	
+	/**
+	 * @param filename the location of the file
+	 * @param fileType what type of file, using the DataSet constants (e.g. DataSet.CSVFILE)
+	 */
+	public FileExampleSource(String filename, int fileType){
+		if( fileType != DataSet.CSVFILE && fileType != DataSet.TEXTFILE && fileType != DataSet.BINARYFILE &&
+			fileType != DataSet.LIBSVMFILE ){
+			throw new IllegalArgumentException("Unknown file type: " + fileType);
+		}
+		
+		this.filename = filename;
+		this.fileType = fileType;
+	}
+	
+	/**
+	 * A source for a text file whose words are hashed into features with hasher, which
+	 * keeps the size of the models fixed however many different words the file has.
+	 * 
+	 * @param textFile the location of the text file
+	 * @param hasher
+	 */
+	public FileExampleSource(String textFile, FeatureHasher hasher){
+		this(textFile, DataSet.TEXTFILE);
+		this.hasher = hasher;
+	}
+	
+	public Iterator<Example> open(){
+		if( fileType == DataSet.CSVFILE ){
+			return new CSVByteReader(filename);
+		}else if( fileType == DataSet.TEXTFILE ){
+			// words are numbered in the order they're first seen, so every
+			// pass over the file gives them the same feature indices
+			return new TextDataReader(filename, hasher);
+		}else if( fileType == DataSet.LIBSVMFILE ){
+			return new LibSVMReader(filename);
+		}else{
+			return new BinaryDataReader(filename);
+		}
+	}
+}
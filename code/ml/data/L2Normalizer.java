@@ -0,0 +1,12 @@
+package ml.data;
+
+/**
+ * A PreprocessingStage that scales each example to have length (L2 norm) 1.  Since
+ * it depends on all of an example's features it has to be the last stage.
+ */
+public class L2Normalizer implements PreprocessingStage {
+	@Override
+	public void fit(FeatureStatistics stats, FeatureTransform transform){
+		transform.normalizeRows();
+	}
+}
@@ -0,0 +1,80 @@
+package ml.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * A mapping between labels and class ids, which number the classes 0 to
+ * getNumClasses()-1.  Class ids can be used to index arrays (e.g. per class
+ * counts or weights) and compared as ints rather than as doubles.
+ */
+public class LabelDictionary {
+	private HashMap<Double, Integer> classIds = new HashMap<Double, Integer>();
+	private ArrayList<Double> labels = new ArrayList<Double>(); // indexed by class id
+	
+	/**
+	 * Create an empty dictionary, class ids are given out in the order
+	 * the labels are added
+	 */
+	public LabelDictionary(){
+	}
+	
+	/**
+	 * Create a dictionary for labels with the class ids in increasing order of
+	 * label, so that labels 0, 1, 2, ... get the same class ids
+	 * 
+	 * @param labels
+	 */
+	public LabelDictionary(Collection<Double> labels){
+		ArrayList<Double> sorted = new ArrayList<Double>(labels);
+		Collections.sort(sorted);
+		
+		for( double label: sorted ){
+			addLabel(label);
+		}
+	}
+	
+	/**
+	 * Get the class id for label, adding label as a new class if it isn't already in the dictionary
+	 * 
+	 * @param label
+	 * @return the class id
+	 */
+	public int addLabel(double label){
+		Integer classId = classIds.get(label);
+		
+		if( classId == null ){
+			classId = labels.size();
+			classIds.put(label, classId);
+			labels.add(label);
+		}
+		
+		return classId;
+	}
+	
+	/**
+	 * @param label
+	 * @return the class id of label, or -1 if it's not in the dictionary
+	 */
+	public int getClassId(double label){
+		Integer classId = classIds.get(label);
+		return classId == null ? -1 : classId;
+	}
+	
+	/**
+	 * @param classId
+	 * @return the label with class id classId
+	 */
+	public double getLabel(int classId){
+		return labels.get(classId);
+	}
+	
+	/**
+	 * @return the number of classes
+	 */
+	public int getNumClasses(){
+		return labels.size();
+	}
+}
@@ -0,0 +1,259 @@
+package ml.data;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * A class for reading examples from sparse LIBSVM/SVMlight files, one example per line:
+ * 
+ * label index:value index:value ...
+ * 
+ * Feature indices are used as they are (the layout Example.toString writes, see
+ * LibSVMWriter), so files numbering their features from 1 just have an unused feature 0.
+ * Anything after a # is a comment, and tokens that aren't index:value pairs with a
+ * numeric index (e.g. SVMlight's qid:3) are skipped.
+ * 
+ * The file is parsed straight from a byte buffer, so no Strings are created
+ * except for numbers NumberParser can't convert exactly.
+ */
+public class LibSVMReader implements Iterator<Example>{
+	private InputStream in;
+	private byte[] buffer = new byte[1 << 16];
+	private int pos = 0;
+	private int limit = 0;
+	private int lineNumber = 1;
+	
+	private byte[] token = new byte[64]; // the token being parsed
+	private ByteBuffer tokenBuffer = ByteBuffer.wrap(token); // token, for the parser
+	private NumberParser parser = new NumberParser();
+	private Example next;
+	private BitSet features = new BitSet(); // the feature indices seen so far
+	
+	/**
+	 * @param filename the LIBSVM file containing the examples
+	 */
+	public LibSVMReader(String filename){
+		try {
+			in = new FileInputStream(filename);
+			next = readExample();
+		} catch (IOException e) {
+			e.printStackTrace();
+			next = null;
+		}
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+	
+	@Override
+	public Example next() {
+		Example current = next;
+		
+		try {
+			next = current == null ? null : readExample();
+		} catch (IOException e) {
+			e.printStackTrace();
+			next = null;
+		}
+		
+		return current;
+	}
+	
+	@Override
+	public void remove() {
+		// OPTIONAL, so we won't implement
+	}
+	
+	/**
+	 * Get the feature map for the features seen so far, which are named by their index
+	 * 
+	 * @return the feature map
+	 */
+	public HashMap<Integer, String> getFeatureMap(){
+		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
+		
+		for( int index = features.nextSetBit(0); index >= 0; index = features.nextSetBit(index+1) ){
+			featureMap.put(index, Integer.toString(index));
+		}
+		
+		return featureMap;
+	}
+	
+	/**
+	 * Read the next example from the file
+	 * 
+	 * @return the example, or null at the end of the file
+	 * @throws IOException
+	 */
+	private Example readExample() throws IOException{
+		// skip blank and comment lines
+		int b = skipSpaces();
+		
+		while( b == '\n' || b == '#' ){
+			skipLine();
+			b = skipSpaces();
+		}
+		
+		if( b < 0 ){
+			in.close();
+			return null;
+		}
+		
+		Example example = new Example();
+		example.setLabel(parseToken(readToken()));
+		
+		while( true ){
+			b = skipSpaces();
+			
+			if( b < 0 || b == '\n' || b == '#' ){
+				skipLine();
+				return example;
+			}
+			
+			int featureIndex = parseIndex(readToken());
+			
+			if( peek() != ':' ){
+				throw new RuntimeException("Expected index:value on line " + lineNumber + " of LIBSVM file");
+			}
+			
+			pos++;
+			double value = parseToken(readToken());
+			
+			if( featureIndex >= 0 && value != 0 ){
+				example.addFeature(featureIndex, value);
+				features.set(featureIndex);
+			}
+		}
+	}
+	
+	/**
+	 * @return the next byte without consuming it, or -1 at the end of the file
+	 * @throws IOException
+	 */
+	private int peek() throws IOException{
+		if( pos == limit ){
+			limit = in.read(buffer);
+			pos = 0;
+			
+			if( limit <= 0 ){
+				limit = 0;
+				return -1;
+			}
+		}
+		
+		return buffer[pos];
+	}
+	
+	/**
+	 * Skip spaces, tabs and carriage returns
+	 * 
+	 * @return the next byte (not consumed)
+	 * @throws IOException
+	 */
+	private int skipSpaces() throws IOException{
+		int b = peek();
+		
+		while( b == ' ' || b == '\t' || b == '\r' ){
+			pos++;
+			b = peek();
+		}
+		
+		return b;
+	}
+	
+	/**
+	 * Skip past the end of the current line
+	 * 
+	 * @throws IOException
+	 */
+	private void skipLine() throws IOException{
+		int b = peek();
+		
+		while( b >= 0 && b != '\n' ){
+			pos++;
+			b = peek();
+		}
+		
+		if( b == '\n' ){
+			pos++;
+			lineNumber++;
+		}
+	}
+	
+	/**
+	 * Copy the bytes up to the next whitespace, : or # into token
+	 * 
+	 * @return the length of the token
+	 * @throws IOException
+	 */
+	private int readToken() throws IOException{
+		int length = 0;
+		int b = peek();
+		
+		while( b >= 0 && b != ' ' && b != '\t' && b != '\r' && b != '\n' && b != ':' && b != '#' ){
+			if( length == token.length ){
+				byte[] bigger = new byte[2*token.length];
+				System.arraycopy(token, 0, bigger, 0, length);
+				token = bigger;
+				tokenBuffer = ByteBuffer.wrap(token);
+			}
+			
+			token[length++] = (byte)b;
+			pos++;
+			b = peek();
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * @param length
+	 * @return the token as a feature index, or -1 if it isn't a (non-negative) integer
+	 */
+	private int parseIndex(int length){
+		long index = 0;
+		
+		if( length == 0 || length > 10 ){
+			return -1;
+		}
+		
+		for( int i = 0; i < length; i++ ){
+			if( !NumberParser.isDigit(token[i]) ){
+				return -1;
+			}
+			
+			index = index*10 + (token[i] - '0');
+		}
+		
+		return index <= Integer.MAX_VALUE ? (int)index : -1;
+	}
+	
+	/**
+	 * Parse the number in token, numbers that NumberParser can't convert exactly
+	 * are handed to Double.parseDouble.
+	 * 
+	 * @param length
+	 * @return the number
+	 */
+	private double parseToken(int length){
+		double value = parser.parse(tokenBuffer, 0, length);
+		
+		if( parser.isExact() && parser.getEnd() == length ){
+			return value;
+		}
+		
+		try {
+			return Double.parseDouble(new String(token, 0, length, StandardCharsets.UTF_8));
+		} catch (NumberFormatException e) {
+			throw new RuntimeException("Bad number on line " + lineNumber + " of LIBSVM file: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package ml.data;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Writes a data set out in the sparse LIBSVM/SVMlight format, one example per line
+ * in the Example.toString layout:
+ * 
+ * label index:value index:value ...
+ * 
+ * Unlike CSV this only writes the non-zero features, and unlike the text format the
+ * feature indices are kept, so loading the file again (see LibSVMReader) gives back
+ * the same examples without tokenizing anything.  The feature names aren't written.
+ */
+public class LibSVMWriter {
+	/**
+	 * Write data to filename in the LIBSVM format
+	 * 
+	 * @param data the data set to write
+	 * @param filename the location of the file
+	 * @throws IOException
+	 */
+	public static void write(DataSet data, String filename) throws IOException{
+		BufferedWriter out = new BufferedWriter(new FileWriter(filename), 1 << 16);
+		
+		try{
+			for( Example e: data.getData() ){
+				// dense examples store their zeros, which don't need to be written
+				out.write(e instanceof DenseExample || e instanceof DenseFloatExample ? Example.sparseCopy(e).toString() : e.toString());
+				out.write('\n');
+			}
+		}finally{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package ml.data;
+
+/**
+ * An example whose features are read directly out of a memory mapped binary
+ * data file (see BinaryDataReader).  The mapped file is read only, so the first
+ * time the features are changed they're copied into the regular sparse storage
+ * and the example behaves like any other Example from then on.
+ */
+class MappedExample extends Example {
+	private BinaryDataReader file;
+	private long start; // position of the first feature in the file
+	private int size; // number of features stored in the file
+	private boolean copied = false; // whether the features have been copied out of the file
+	
+	public MappedExample(BinaryDataReader file, long start, int size, double label){
+		super(0);
+		this.file = file;
+		this.start = start;
+		this.size = size;
+		setLabel(label);
+	}
+	
+	@Override
+	public void addFeature(int featureNum, double value){
+		if( !copied ){
+			for( int i = 0; i < size; i++ ){
+				super.addFeature(file.getIndex(start+i), file.getValue(start+i));
+			}
+			
+			copied = true;
+			file = null;
+		}
+		
+		super.addFeature(featureNum, value);
+	}
+	
+	@Override
+	public double getFeature(int featureNum){
+		if( copied ){
+			return super.getFeature(featureNum);
+		}
+		
+		// binary search the mapped indices
+		int low = 0;
+		int high = size-1;
+		
+		while( low <= high ){
+			int mid = (low+high) >>> 1;
+			int index = file.getIndex(start+mid);
+			
+			if( index < featureNum ){
+				low = mid+1;
+			}else if( index > featureNum ){
+				high = mid-1;
+			}else{
+				return file.getValue(start+mid);
+			}
+		}
+		
+		return 0.0;
+	}
+	
+	@Override
+	public int getNumNonZero(){
+		return copied ? super.getNumNonZero() : size;
+	}
+	
+	@Override
+	public int getIndexAt(int pos){
+		return copied ? super.getIndexAt(pos) : file.getIndex(start+pos);
+	}
+	
+	@Override
+	public double getValueAt(int pos){
+		return copied ? super.getValueAt(pos) : file.getValue(start+pos);
+	}
+}
@@ -0,0 +1,25 @@
+package ml.data;
+
+/**
+ * A PreprocessingStage that removes the features that occur (are non-zero) in fewer
+ * than a minimum number of the training examples, e.g. words that only show up once.
+ */
+public class MinDocumentFrequencyFilter implements PreprocessingStage {
+	private int minFrequency;
+	
+	/**
+	 * @param minFrequency the number of training examples a feature has to occur in to be kept
+	 */
+	public MinDocumentFrequencyFilter(int minFrequency){
+		this.minFrequency = minFrequency;
+	}
+	
+	@Override
+	public void fit(FeatureStatistics stats, FeatureTransform transform){
+		for( int j = 0; j < stats.getNumFeatures(); j++ ){
+			if( stats.getDocumentFrequency(j) < minFrequency ){
+				transform.remove(j);
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package ml.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses numbers straight from bytes for the readers that don't create Strings
+ * (CSVByteReader and LibSVMReader).
+ * 
+ * Numbers with at most 18 significant digits and a small exponent (i.e. pretty much
+ * anything in a data file) are exactly converted with a single multiplication or
+ * division by a power of ten.  Anything else isn't exact (see isExact) and should be
+ * handed to Double.parseDouble by the reader, which also takes care of reporting
+ * badly formatted numbers.
+ */
+class NumberParser {
+	// exactly representable powers of ten for the fast path
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	private int end; // the position after the last number parsed
+	private boolean exact; // whether the last number parsed was converted exactly
+	
+	/**
+	 * Parse the number (sign, digits, decimal point and exponent) starting at position
+	 * start of buf, stopping at the first byte that can't be part of it or at limit.
+	 * Check isExact before using the value, and getEnd for where the number stopped.
+	 * 
+	 * @param buf
+	 * @param start
+	 * @param limit
+	 * @return the number, if isExact
+	 */
+	public double parse(ByteBuffer buf, int start, int limit){
+		int i = start;
+		byte b = i < limit ? buf.get(i) : 0;
+		boolean negative = false;
+		
+		if( b == '-' || b == '+' ){
+			negative = b == '-';
+			b = ++i < limit ? buf.get(i) : 0;
+		}
+		
+		long mantissa = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean sawDigit = false;
+		
+		// integer part
+		while( isDigit(b) ){
+			mantissa = mantissa*10 + (b - '0');
+			sawDigit = true;
+			
+			if( mantissa != 0 ){
+				significantDigits++;
+			}
+			
+			b = ++i < limit ? buf.get(i) : 0;
+		}
+		
+		// fractional part
+		if( b == '.' ){
+			b = ++i < limit ? buf.get(i) : 0;
+			
+			while( isDigit(b) ){
+				mantissa = mantissa*10 + (b - '0');
+				exponent--;
+				sawDigit = true;
+				
+				if( mantissa != 0 ){
+					significantDigits++;
+				}
+				
+				b = ++i < limit ? buf.get(i) : 0;
+			}
+		}
+		
+		// exponent
+		if( sawDigit && (b == 'e' || b == 'E') ){
+			b = ++i < limit ? buf.get(i) : 0;
+			boolean negativeExponent = false;
+			
+			if( b == '-' || b == '+' ){
+				negativeExponent = b == '-';
+				b = ++i < limit ? buf.get(i) : 0;
+			}
+			
+			int e = 0;
+			sawDigit = false;
+			
+			while( isDigit(b) ){
+				e = Math.min(e*10 + (b - '0'), 10000);
+				sawDigit = true;
+				b = ++i < limit ? buf.get(i) : 0;
+			}
+			
+			exponent += negativeExponent ? -e : e;
+		}
+		
+		end = i;
+		exact = sawDigit && significantDigits <= 18 && mantissa < (1L << 53) &&
+			Math.abs(exponent) < POWERS_OF_TEN.length;
+		
+		if( !exact ){
+			return 0.0;
+		}
+		
+		double value = exponent >= 0 ? mantissa*POWERS_OF_TEN[exponent] : mantissa/POWERS_OF_TEN[-exponent];
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * @return the position after the last number parsed
+	 */
+	public int getEnd(){
+		return end;
+	}
+	
+	/**
+	 * @return whether the last number parsed was converted exactly, otherwise
+	 * it should be parsed with Double.parseDouble
+	 */
+	public boolean isExact(){
+		return exact;
+	}
+	
+	public static boolean isDigit(byte b){
+		return b >= '0' && b <= '9';
+	}
+}
@@ -0,0 +1,149 @@
+package ml.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A DataPreprocessor made up of a sequence of stages (e.g. MinDocumentFrequencyFilter,
+ * TFIDFWeighter, FeatureScaler and then L2Normalizer).
+ * 
+ * Running the stages one after another would mean a pass over the data for each stage to
+ * learn it and another to apply it.  Instead, each stage is learned from the training data's
+ * feature statistics (see DataSet.getFeatureStatistics), collected in one parallel pass, and the
+ * stages are combined into one FeatureTransform that's applied to each example in a
+ * single pass.  preprocessTest applies the same transform, so the test data is processed
+ * with what was learned from the training data.
+ * 
+ * Features that aren't in the training data are removed from the test data.
+ */
+public class PreprocessingPipeline implements DataPreprocessor {
+	private ArrayList<PreprocessingStage> stages = new ArrayList<PreprocessingStage>();
+	private int numThreads = 1;
+	private FeatureTransform transform = null; // learned by preprocessTrain
+	
+	/**
+	 * Add a stage to the end of the pipeline
+	 * 
+	 * @param stage
+	 */
+	public void addStage(PreprocessingStage stage){
+		stages.add(stage);
+	}
+	
+	/**
+	 * Set the number of threads used to collect the statistics and to apply the transform
+	 * 
+	 * @param numThreads
+	 */
+	public void setNumThreads(int numThreads){
+		this.numThreads = numThreads;
+	}
+	
+	/**
+	 * @return the transform learned by preprocessTrain, which can also be applied
+	 * to examples one at a time, e.g. ones being streamed from an ExampleSource
+	 */
+	public FeatureTransform getTransform(){
+		return transform;
+	}
+	
+	@Override
+	public void preprocessTrain(DataSet train){
+		FeatureStatistics stats = train.getFeatureStatistics(numThreads);
+		transform = new FeatureTransform(stats.getNumFeatures());
+		
+		for( PreprocessingStage stage: stages ){
+			// each stage sees the statistics after the stages before it
+			stage.fit(stats.forTransform(new FeatureTransform(transform)), transform);
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		
+		try {
+			apply(pool, train);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Override
+	public void preprocessTest(DataSet test){
+		if( transform == null ){
+			throw new RuntimeException("preprocessTrain must be called before preprocessTest");
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		
+		try {
+			apply(pool, test);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Replace each example in data with the transformed version
+	 */
+	private void apply(ExecutorService pool, DataSet data){
+		final List<Example> examples = data.getData();
+		ArrayList<Future<Example[]>> chunks = new ArrayList<Future<Example[]>>();
+		int[] boundaries = getChunkBoundaries(examples.size());
+		
+		for( int i = 0; i < boundaries.length-1; i++ ){
+			final int begin = boundaries[i];
+			final int end = boundaries[i+1];
+			
+			chunks.add(pool.submit(new Callable<Example[]>(){
+				public Example[] call(){
+					Example[] transformed = new Example[end-begin];
+					
+					for( int j = begin; j < end; j++ ){
+						transformed[j-begin] = transform.apply(examples.get(j));
+					}
+					
+					return transformed;
+				}
+			}));
+		}
+		
+		try {
+			for( int i = 0; i < chunks.size(); i++ ){
+				Example[] transformed = chunks.get(i).get();
+				
+				for( int j = 0; j < transformed.length; j++ ){
+					data.setExample(boundaries[i]+j, transformed[j]);
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		
+		// the transform makes sparse (or, if it shifts features, dense) double examples,
+		// convert them back to how the data set stores its examples
+		data.setDense(data.isDense() || transform.isShifted());
+	}
+	
+	/**
+	 * Split numExamples into a chunk per thread
+	 * 
+	 * @param numExamples
+	 * @return the chunk boundaries, chunk i is from boundaries[i] to boundaries[i+1]
+	 */
+	private int[] getChunkBoundaries(int numExamples){
+		int numChunks = Math.max(1, Math.min(numThreads, numExamples));
+		int[] boundaries = new int[numChunks+1];
+		
+		for( int i = 0; i <= numChunks; i++ ){
+			boundaries[i] = (int)((long)numExamples*i/numChunks);
+		}
+		
+		return boundaries;
+	}
+}
@@ -0,0 +1,19 @@
+package ml.data;
+
+/**
+ * A step of a PreprocessingPipeline, e.g. TF-IDF weighting or normalization.
+ * 
+ * Rather than changing the data itself, a stage adds what it does to a FeatureTransform
+ * based on statistics of the data as it would look after the earlier stages.  This way
+ * the statistics for every stage come from a single pass over the data and all of the
+ * stages are applied to each example at once.
+ */
+public interface PreprocessingStage {
+	/**
+	 * Learn this stage from the training data and add it to transform
+	 * 
+	 * @param stats statistics of the training data after the earlier stages
+	 * @param transform the transform of the earlier stages, to add this stage to
+	 */
+	public void fit(FeatureStatistics stats, FeatureTransform transform);
+}
@@ -0,0 +1,76 @@
+package ml.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Shuffles the examples from another iterator while only holding a fixed number of them
+ * in memory.  The buffer is filled from the source, then each call to next returns a
+ * random example from the buffer and replaces it with the next one from the source.
+ * 
+ * This isn't a uniform shuffle of the whole source (an example can't come out before
+ * the examples more than bufferSize ahead of it are read), but with a reasonably large
+ * buffer it's random enough for online learning and memory use doesn't depend on the
+ * size of the source.
+ */
+public class ShuffleBuffer implements Iterator<Example> {
+	private Iterator<Example> source;
+	private Example[] buffer;
+	private int size = 0; // the number of examples in the buffer
+	private Random random;
+	
+	/**
+	 * @param source the examples to shuffle
+	 * @param bufferSize the maximum number of examples to hold at once
+	 */
+	public ShuffleBuffer(Iterator<Example> source, int bufferSize){
+		this(source, bufferSize, new Random());
+	}
+	
+	/**
+	 * @param source the examples to shuffle
+	 * @param bufferSize the maximum number of examples to hold at once
+	 * @param random
+	 */
+	public ShuffleBuffer(Iterator<Example> source, int bufferSize, Random random){
+		if( bufferSize < 1 ){
+			throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+		}
+		
+		this.source = source;
+		this.buffer = new Example[bufferSize];
+		this.random = random;
+		
+		while( size < bufferSize && source.hasNext() ){
+			buffer[size] = source.next();
+			size++;
+		}
+	}
+	
+	@Override
+	public boolean hasNext() {
+		return size > 0;
+	}
+	
+	@Override
+	public Example next() {
+		if( !hasNext() ){
+			throw new NoSuchElementException();
+		}
+		
+		int index = random.nextInt(size);
+		Example next = buffer[index];
+		
+		if( source.hasNext() ){
+			buffer[index] = source.next();
+		}else{
+			// the source is done, so the buffer just shrinks
+			size--;
+			buffer[index] = buffer[size];
+			buffer[size] = null;
+		}
+		
+		return next;
+	}
+}
@@ -0,0 +1,22 @@
+package ml.data;
+
+/**
+ * A PreprocessingStage that weights each feature by its inverse document frequency,
+ * log(number of examples / number of examples the feature occurs in).  Applied to
+ * word counts this gives the usual tf-idf weights.  Features that occur in every
+ * example get a weight of 0 and so are effectively removed.
+ */
+public class TFIDFWeighter implements PreprocessingStage {
+	@Override
+	public void fit(FeatureStatistics stats, FeatureTransform transform){
+		double numExamples = stats.getNumExamples();
+		
+		for( int j = 0; j < stats.getNumFeatures(); j++ ){
+			int df = stats.getDocumentFrequency(j);
+			
+			if( df > 0 ){
+				transform.scale(j, Math.log(numExamples/df));
+			}
+		}
+	}
+}
@@ -3,9 +3,17 @@ package ml.data;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ml.classifiers.DecisionTreeClassifier;
 import ml.utils.HashMapCounter;
@@ -16,6 +24,12 @@ import ml.utils.HashMapCounter;
  * Each example should be a single line in the file.  The line should start with a numerical
  * label and then the words of the example should follow with each word separated by whitespace.
  * 
+ * The file can either be read one line at a time or, for large files, loaded up front
+ * using multiple threads.  Both produce exactly the same examples and feature indices.
+ * 
+ * By default every word gets its own feature.  For very large vocabularies the words can
+ * instead be hashed into a fixed number of features with a FeatureHasher.
+ * 
  * @author dkauchak
  *
  */
@@ -26,11 +40,33 @@ public class TextDataReader implements Iterator<Example>{
 	// keep track of the mapping of the words to their feature index
 	private HashMap<String, Integer> wordToFeature = new HashMap<String,Integer>();
 	private int currentFeature = 0;
+	
+	// if not null, words are hashed to their features instead of using wordToFeature
+	private FeatureHasher hasher = null;
+	
+	// only used when the file is loaded in parallel
+	private ArrayList<Example> loaded = null;
+	private int nextLoaded = 0;
+	
+	// the file is split into at least this many pieces per thread so that the
+	// threads stay busy even if some pieces are slower than others
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final long MAX_CHUNK_SIZE = 1L << 26;
 		
 	/**
 	 * @param textFile the text file containing the examples
 	 */
-	public TextDataReader(String textFile){		
+	public TextDataReader(String textFile){
+		this(textFile, null);
+	}
+	
+	/**
+	 * @param textFile the text file containing the examples
+	 * @param hasher the hasher to map words to features with, or null to give each word its own feature
+	 */
+	public TextDataReader(String textFile, FeatureHasher hasher){
+		this.hasher = hasher;
+		
 		try {
 			in = new BufferedReader(new FileReader(textFile));
 			nextLine = in.readLine();
@@ -39,13 +75,148 @@ public class TextDataReader implements Iterator<Example>{
 		}
 	}
 	
+	/**
+	 * Load all of the examples in textFile using numThreads threads.  The file is split into
+	 * pieces at line boundaries and each piece is tokenized on its own thread with its own
+	 * vocabulary.  The vocabularies are then merged in file order, which gives every word the
+	 * same feature index it would get when reading the file one line at a time.
+	 * 
+	 * @param textFile the text file containing the examples
+	 * @param numThreads the number of threads to use
+	 */
+	public TextDataReader(String textFile, int numThreads){
+		this(textFile, numThreads, null);
+	}
+	
+	/**
+	 * Load all of the examples in textFile using numThreads threads, see above.
+	 * 
+	 * @param textFile the text file containing the examples
+	 * @param numThreads the number of threads to use
+	 * @param hasher the hasher to map words to features with, or null to give each word its own feature
+	 */
+	public TextDataReader(String textFile, int numThreads, FeatureHasher hasher){
+		this.hasher = hasher;
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		
+		try {
+			long[] boundaries = getChunkBoundaries(textFile, numThreads);
+			
+			// tokenize each chunk
+			ArrayList<Future<TextChunk>> tokenized = new ArrayList<Future<TextChunk>>();
+			
+			for( int i = 0; i < boundaries.length-1; i++ ){
+				final TextChunk chunk = new TextChunk(textFile, boundaries[i], boundaries[i+1]);
+				
+				tokenized.add(pool.submit(new Callable<TextChunk>(){
+					public TextChunk call() throws IOException{
+						chunk.tokenize();
+						return chunk;
+					}
+				}));
+			}
+			
+			// merge the vocabularies in file order
+			ArrayList<Future<ArrayList<Example>>> built = new ArrayList<Future<ArrayList<Example>>>();
+			
+			for( Future<TextChunk> future: tokenized ){
+				final TextChunk chunk = future.get();
+				final int[] localToFeature = new int[chunk.words.size()];
+				final double[] localSigns = new double[chunk.words.size()];
+				
+				for( int i = 0; i < localToFeature.length; i++ ){
+					String word = chunk.words.get(i);
+					localToFeature[i] = getFeatureIndex(word);
+					localSigns[i] = getFeatureSign(word);
+				}
+				
+				// the examples for this chunk can be built as soon as its words have feature indices
+				built.add(pool.submit(new Callable<ArrayList<Example>>(){
+					public ArrayList<Example> call(){
+						return chunk.toExamples(localToFeature, localSigns);
+					}
+				}));
+			}
+			
+			loaded = new ArrayList<Example>();
+			
+			for( Future<ArrayList<Example>> future: built ){
+				loaded.addAll(future.get());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		
+		if( loaded == null ){
+			loaded = new ArrayList<Example>();
+		}
+	}
+	
+	/**
+	 * Split the file into pieces for loading in parallel.  Each piece starts at the beginning
+	 * of a line.
+	 * 
+	 * @param textFile
+	 * @param numThreads
+	 * @return the byte offsets where the pieces start, with the file size as the last entry
+	 * @throws IOException
+	 */
+	private static long[] getChunkBoundaries(String textFile, int numThreads) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(textFile, "r");
+		
+		try{
+			long size = file.length();
+			int numChunks = (int)Math.max(numThreads*CHUNKS_PER_THREAD, size/MAX_CHUNK_SIZE+1);
+			long[] boundaries = new long[numChunks+1];
+			byte[] buffer = new byte[8192];
+			
+			for( int i = 1; i < numChunks; i++ ){
+				// move forward from the even split point to just past the next new line
+				long pos = Math.max(size*i/numChunks, boundaries[i-1]+1) - 1;
+				boundaries[i] = size;
+				file.seek(pos);
+				int read;
+				
+				while( boundaries[i] == size && (read = file.read(buffer)) > 0 ){
+					for( int j = 0; j < read; j++ ){
+						if( buffer[j] == '\n' ){
+							boundaries[i] = pos+j+1;
+							break;
+						}
+					}
+					
+					pos += read;
+				}
+			}
+			
+			boundaries[numChunks] = size;
+			return boundaries;
+		}finally{
+			file.close();
+		}
+	}
+	
 	@Override
 	public boolean hasNext() {
+		if( loaded != null ){
+			return nextLoaded < loaded.size();
+		}
+		
 		return nextLine != null;
 	}
 
 	@Override
 	public Example next() {
+		if( loaded != null ){
+			return hasNext() ? loaded.get(nextLoaded++) : null;
+		}
+		
 		Example data = null;
 		
 		if( hasNext() ){
@@ -55,27 +226,12 @@ public class TextDataReader implements Iterator<Example>{
 			String[] parts = nextLine.split("\\s+");
 			
 			data.setLabel(Double.parseDouble(parts[0]));
-	
-			// do a little bit of preprocessing and count how
-			// many times each word occurs
-			HashMapCounter<String> counter = new HashMapCounter<String>();
-			
-			for( int i = 1; i < parts.length; i++ ){
-				String w = parts[i].toLowerCase();
-				
-				// check if it has at least one alphabet character
-				if( !w.matches("[^a-z]+")){
-					counter.increment(w);
-				}
-			}
+			HashMapCounter<String> counter = countWords(parts);
 			
 			for( String word: counter.keySet() ){
-				if( !wordToFeature.containsKey(word) ){
-					wordToFeature.put(word, currentFeature);
-					currentFeature++;
-				}
-				
-				data.addFeature(wordToFeature.get(word), counter.get(word));
+				// hashed words can share a feature, so add to what's already there
+				int featureIndex = getFeatureIndex(word);
+				data.addFeature(featureIndex, data.getFeature(featureIndex) + getFeatureSign(word)*counter.get(word));
 			}
 			
 			try {
@@ -88,6 +244,56 @@ public class TextDataReader implements Iterator<Example>{
 		return data;
 	}
 	
+	/**
+	 * Get the feature index for word, giving it a new one if it hasn't been seen before
+	 * 
+	 * @param word
+	 * @return the feature index
+	 */
+	private int getFeatureIndex(String word){
+		if( hasher != null ){
+			hasher.record(word);
+			return hasher.getIndex(word);
+		}
+		
+		if( !wordToFeature.containsKey(word) ){
+			wordToFeature.put(word, currentFeature);
+			currentFeature++;
+		}
+		
+		return wordToFeature.get(word);
+	}
+	
+	/**
+	 * @param word
+	 * @return what the counts of word are multiplied by (only ever -1 when hashing)
+	 */
+	private double getFeatureSign(String word){
+		return hasher == null ? 1.0 : hasher.getSign(word);
+	}
+	
+	/**
+	 * Do a little bit of preprocessing on the words of a line and count how
+	 * many times each word occurs
+	 * 
+	 * @param parts the line split on whitespace, the first entry is the label
+	 * @return the word counts
+	 */
+	private static HashMapCounter<String> countWords(String[] parts){
+		HashMapCounter<String> counter = new HashMapCounter<String>();
+		
+		for( int i = 1; i < parts.length; i++ ){
+			String w = parts[i].toLowerCase();
+			
+			// check if it has at least one alphabet character
+			if( !w.matches("[^a-z]+")){
+				counter.increment(w);
+			}
+		}
+		
+		return counter;
+	}
+	
 	@Override
 	public void remove() {
 		// OPTIONAL, so we won't implement
@@ -98,9 +304,16 @@ public class TextDataReader implements Iterator<Example>{
 	 * all of the examples read so far.  Generally should only be called after
 	 * all of the examples have been read.
 	 * 
+	 * When hashing, this only has the features that have been used and they're named
+	 * by the words the hasher remembers for them (see FeatureHasher.getFeatureMap).
+	 * 
 	 * @return feature map
 	 */
 	public HashMap<Integer, String> getFeatureMap(){
+		if( hasher != null ){
+			return hasher.getFeatureMap();
+		}
+		
 		HashMap<Integer, String> featureMap = new HashMap<Integer, String>();
 		
 		for( String word: wordToFeature.keySet() ){
@@ -109,4 +322,103 @@ public class TextDataReader implements Iterator<Example>{
 		
 		return featureMap;
 	}	
-}
\ No newline at end of file
+
+	/**
+	 * A piece of the text file that's tokenized on its own.  The words in the piece
+	 * are numbered in the order they're first seen, just like the serial reader does
+	 * for the whole file.
+	 */
+	private static class TextChunk{
+		private String textFile;
+		private long start;
+		private long end;
+		
+		// the vocabulary of this piece, in the order the words were first seen
+		public ArrayList<String> words = new ArrayList<String>();
+		private HashMap<String, Integer> wordIds = new HashMap<String, Integer>();
+		
+		// the tokenized lines
+		private ArrayList<Double> labels = new ArrayList<Double>();
+		private ArrayList<int[]> lineWords = new ArrayList<int[]>();
+		private ArrayList<double[]> lineCounts = new ArrayList<double[]>();
+		
+		public TextChunk(String textFile, long start, long end){
+			this.textFile = textFile;
+			this.start = start;
+			this.end = end;
+		}
+		
+		/**
+		 * Read and tokenize the lines in this piece
+		 * 
+		 * @throws IOException
+		 */
+		public void tokenize() throws IOException{
+			byte[] bytes = new byte[(int)(end-start)];
+			RandomAccessFile file = new RandomAccessFile(textFile, "r");
+			
+			try{
+				file.seek(start);
+				file.readFully(bytes);
+			}finally{
+				file.close();
+			}
+			
+			// the same decoding that FileReader does
+			String text = new String(bytes, Charset.defaultCharset());
+			BufferedReader lines = new BufferedReader(new StringReader(text));
+			String line;
+			
+			while( (line = lines.readLine()) != null ){
+				String[] parts = line.split("\\s+");
+				labels.add(Double.parseDouble(parts[0]));
+				
+				HashMapCounter<String> counter = countWords(parts);
+				int[] ids = new int[counter.size()];
+				double[] counts = new double[counter.size()];
+				int i = 0;
+				
+				for( String word: counter.keySet() ){
+					if( !wordIds.containsKey(word) ){
+						wordIds.put(word, words.size());
+						words.add(word);
+					}
+					
+					ids[i] = wordIds.get(word);
+					counts[i] = counter.get(word);
+					i++;
+				}
+				
+				lineWords.add(ids);
+				lineCounts.add(counts);
+			}
+		}
+		
+		/**
+		 * Build the examples for this piece
+		 * 
+		 * @param localToFeature the feature index for each word in words
+		 * @param localSigns what the counts of each word in words are multiplied by
+		 * @return the examples
+		 */
+		public ArrayList<Example> toExamples(int[] localToFeature, double[] localSigns){
+			ArrayList<Example> examples = new ArrayList<Example>(labels.size());
+			
+			for( int line = 0; line < labels.size(); line++ ){
+				int[] ids = lineWords.get(line);
+				double[] counts = lineCounts.get(line);
+				Example data = new Example();
+				data.setLabel(labels.get(line));
+				
+				for( int i = 0; i < ids.length; i++ ){
+					int featureIndex = localToFeature[ids[i]];
+					data.addFeature(featureIndex, data.getFeature(featureIndex) + localSigns[ids[i]]*counts[i]);
+				}
+				
+				examples.add(data);
+			}
+			
+			return examples;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package ml.utils;
+
+/**
+ * Keeps the k entries with the smallest distances out of everything offered to it, as
+ * a max-heap (largest distance at the root) over primitive arrays, so finding the k
+ * nearest of n items takes O(n log k) time and, once the heap is made, no allocation.
+ * 
+ * Entries are (distance, id) pairs.  Ties in distance go to the smaller id, so offering
+ * items in increasing id order gives the same k as a stable sort by distance would.
+ */
+public class TopKHeap {
+	private double[] distances;
+	private int[] ids;
+	private int size = 0;
+	
+	/**
+	 * @param k the number of entries to keep, at least 1
+	 */
+	public TopKHeap(int k){
+		if( k < 1 ){
+			throw new RuntimeException("k must be at least 1: " + k);
+		}
+		
+		distances = new double[k];
+		ids = new int[k];
+	}
+	
+	/**
+	 * @return the number of entries the heap keeps
+	 */
+	public int getK(){
+		return distances.length;
+	}
+	
+	/**
+	 * @return the number of entries currently in the heap
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**
+	 * Remove all of the entries
+	 */
+	public void clear(){
+		size = 0;
+	}
+	
+	/**
+	 * @return the largest distance an entry can have and still be added, i.e. the
+	 * largest distance in the heap if it's full, otherwise infinity
+	 */
+	public double getBound(){
+		return size < distances.length ? Double.POSITIVE_INFINITY : distances[0];
+	}
+	
+	/**
+	 * Offer an entry to the heap
+	 * 
+	 * @param distance
+	 * @param id
+	 * @return whether the entry was kept
+	 */
+	public boolean offer(double distance, int id){
+		if( size < distances.length ){
+			// add it at the bottom and move it up
+			int pos = size++;
+			
+			while( pos > 0 ){
+				int parent = (pos-1)/2;
+				
+				if( !greater(distance, id, distances[parent], ids[parent]) ){
+					break;
+				}
+				
+				distances[pos] = distances[parent];
+				ids[pos] = ids[parent];
+				pos = parent;
+			}
+			
+			distances[pos] = distance;
+			ids[pos] = id;
+			return true;
+		}else if( size > 0 && greater(distances[0], ids[0], distance, id) ){
+			// replace the root and move it down
+			siftDown(0, distance, id, size);
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Sort the entries in increasing order of distance (and id), after which getDistance(0)
+	 * is the nearest.  This uses up the heap order, so clear should be called before
+	 * offering more entries.
+	 */
+	public void sort(){
+		// heap sort: repeatedly swap the largest to the end of the shrinking heap
+		for( int end = size-1; end > 0; end-- ){
+			double distance = distances[end];
+			int id = ids[end];
+			distances[end] = distances[0];
+			ids[end] = ids[0];
+			siftDown(0, distance, id, end);
+		}
+	}
+	
+	/**
+	 * @param i
+	 * @return the distance of entry i (in heap order, or sorted order after sort)
+	 */
+	public double getDistance(int i){
+		return distances[i];
+	}
+	
+	/**
+	 * @param i
+	 * @return the id of entry i (in heap order, or sorted order after sort)
+	 */
+	public int getId(int i){
+		return ids[i];
+	}
+	
+	/**
+	 * Put (distance, id) at pos and move it down until the heap of the first
+	 * heapSize entries is in order again
+	 */
+	private void siftDown(int pos, double distance, int id, int heapSize){
+		while( true ){
+			int child = 2*pos+1;
+			
+			if( child >= heapSize ){
+				break;
+			}
+			
+			if( child+1 < heapSize && greater(distances[child+1], ids[child+1], distances[child], ids[child]) ){
+				child++;
+			}
+			
+			if( !greater(distances[child], ids[child], distance, id) ){
+				break;
+			}
+			
+			distances[pos] = distances[child];
+			ids[pos] = ids[child];
+			pos = child;
+		}
+		
+		distances[pos] = distance;
+		ids[pos] = id;
+	}
+	
+	private static boolean greater(double distance1, int id1, double distance2, int id2){
+		return distance1 > distance2 || (distance1 == distance2 && id1 > id2);
+	}
+}